@@ -0,0 +1,131 @@
+package game.dots;
+
+import android.test.AndroidTestCase;
+import android.test.RenamingDelegatingContext;
+
+import java.util.List;
+
+/**
+ * LeaderboardSync against LocalLeaderboardServer, with its own database file.
+ */
+public class LeaderboardSyncTest extends AndroidTestCase {
+    private LocalLeaderboardServer server;
+    private DatabaseHandler db;
+    private LeaderboardSync sync;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        RenamingDelegatingContext context = new RenamingDelegatingContext(getContext(), "test_");
+        context.deleteDatabase("HighScoresManager");
+        server = new LocalLeaderboardServer();
+        db = new DatabaseHandler(context);
+        sync = new LeaderboardSync(context, db, server.url());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        server.close();
+        db.close();
+        super.tearDown();
+    }
+
+    public void testQueuedScoresGoOutInOneRequest() {
+        for(int i = 0; i < 5; i++) {
+            db.addScore(new HighScore("player" + i, 10 * i, "6x6"), true);
+        }
+        db.addScore(new HighScore("local", 99, "6x6"), false);
+
+        assertTrue(sync.flush());
+        assertEquals(1, server.requests().size());
+        assertEquals(5, server.scores().size());
+        assertTrue(db.getOutbox(100).isEmpty());
+    }
+
+    public void testFailedUploadKeepsOutbox() {
+        db.addScore(new HighScore("player", 42, "7x7"), true);
+        server.failNext(1);
+
+        assertFalse(sync.flush());
+        assertEquals(1, db.getOutbox(100).size());
+        assertTrue(server.scores().isEmpty());
+
+        assertTrue(sync.flush());
+        assertTrue(db.getOutbox(100).isEmpty());
+        assertEquals(42, server.scores().get(0)._score);
+    }
+
+    public void testRejectedBatchIsDropped() {
+        db.addScore(new HighScore("player", 42, "7x7"), true);
+        server.failNext(1, "400 Bad Request");
+
+        assertTrue(sync.flush());
+        assertTrue(db.getOutbox(100).isEmpty());
+        assertTrue(server.scores().isEmpty());
+
+        //Later scores still go out
+        db.addScore(new HighScore("player", 43, "7x7"), true);
+        assertTrue(sync.flush());
+        assertEquals(43, server.scores().get(0)._score);
+    }
+
+    public void testUnprocessableBatchIsDropped() {
+        db.addScore(new HighScore("player", 42, "7x7"), true);
+        server.failNext(1, "422 Unprocessable Entity");
+
+        assertTrue(sync.flush());
+        assertTrue(db.getOutbox(100).isEmpty());
+        assertTrue(server.scores().isEmpty());
+    }
+
+    public void testMisconfiguredServerKeepsOutbox() {
+        db.addScore(new HighScore("player", 42, "7x7"), true);
+        for(String status : new String[] {"401 Unauthorized", "403 Forbidden", "404 Not Found", "410 Gone"}) {
+            server.failNext(1, status);
+            assertFalse(status, sync.flush());
+            assertEquals(status, 1, db.getOutbox(100).size());
+        }
+
+        assertTrue(sync.flush());
+        assertEquals(42, server.scores().get(0)._score);
+    }
+
+    public void testTooLargeBatchIsSplit() {
+        for(int i = 0; i < 5; i++) {
+            db.addScore(new HighScore("player" + i, i, "6x6"), true);
+        }
+        server.setMaxBatch(2);
+
+        assertTrue(sync.flush());
+        assertTrue(db.getOutbox(100).isEmpty());
+        assertEquals(5, server.scores().size());
+    }
+
+    public void testTooManyRequestsIsRetried() {
+        db.addScore(new HighScore("player", 42, "7x7"), true);
+        server.failNext(1, "429 Too Many Requests");
+
+        assertFalse(sync.flush());
+        assertEquals(1, db.getOutbox(100).size());
+
+        assertTrue(sync.flush());
+        assertEquals(42, server.scores().get(0)._score);
+    }
+
+    public void testTopListIsFetchedConditionally() {
+        db.addScore(new HighScore("first", 30, "8x8"), true);
+        db.addScore(new HighScore("second", 50, "8x8"), true);
+        assertTrue(sync.flush());
+
+        assertTrue(sync.fetchTop("8x8"));
+        List<HighScore> top = db.getGlobalScores("8x8");
+        assertEquals(2, top.size());
+        assertEquals("second", top.get(0)._name);
+
+        //Nothing changed on the server, so the cached list is kept
+        assertFalse(sync.fetchTop("8x8"));
+        List<String> requests = server.requests();
+        assertTrue(requests.get(requests.size() - 1).contains("If-None-Match"));
+        assertEquals(2, db.getGlobalScores("8x8").size());
+    }
+}
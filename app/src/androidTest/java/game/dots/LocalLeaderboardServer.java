@@ -0,0 +1,183 @@
+package game.dots;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Stand-in for the leaderboard server on 127.0.0.1, speaking just enough
+ * HTTP/1.1 for LeaderboardSync: one request per connection, bodies sized
+ * by Content-Length.
+ */
+public class LocalLeaderboardServer {
+    private final ServerSocket m_socket;
+    private final List<HighScore> m_scores = new ArrayList<>();
+    private final List<String> m_requests = new ArrayList<>();
+    private int m_failures;
+    private String m_failure;
+    private int m_maxBatch = Integer.MAX_VALUE;
+    private int m_version;
+
+    public LocalLeaderboardServer() throws IOException {
+        m_socket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while(!m_socket.isClosed()) {
+                    try {
+                        Socket client = m_socket.accept();
+                        try {
+                            handle(client.getInputStream(), client.getOutputStream());
+                        } finally {
+                            client.close();
+                        }
+                    } catch(IOException e) {
+                        //Closed, or a client went away
+                    }
+                }
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public String url() {
+        return "http://127.0.0.1:" + m_socket.getLocalPort();
+    }
+
+    public void close() throws IOException {
+        m_socket.close();
+    }
+
+    /**The next n uploads are answered with 503*/
+    public void failNext(int n) {
+        failNext(n, "503 Service Unavailable");
+    }
+
+    /**The next n uploads are answered with status, e.g. "400 Bad Request"*/
+    public synchronized void failNext(int n, String status) {
+        m_failures = n;
+        m_failure = status;
+    }
+
+    /**Uploads with more than n scores are answered with 413*/
+    public synchronized void setMaxBatch(int n) {
+        m_maxBatch = n;
+    }
+
+    /**Request lines received so far, with " If-None-Match: etag" added when sent*/
+    public synchronized List<String> requests() {
+        return new ArrayList<>(m_requests);
+    }
+
+    public synchronized List<HighScore> scores() {
+        return new ArrayList<>(m_scores);
+    }
+
+    private void handle(InputStream in, OutputStream out) throws IOException {
+        String requestLine = readLine(in);
+        HashMap<String, String> headers = new HashMap<>();
+        for(String line = readLine(in); !line.isEmpty(); line = readLine(in)) {
+            int colon = line.indexOf(':');
+            headers.put(line.substring(0, colon).trim().toLowerCase(), line.substring(colon + 1).trim());
+        }
+        byte[] body = new byte[headers.containsKey("content-length") ? Integer.parseInt(headers.get("content-length")) : 0];
+        for(int read = 0; read < body.length; ) {
+            int n = in.read(body, read, body.length - read);
+            if(n < 0) throw new IOException("Short body");
+            read += n;
+        }
+        if("gzip".equals(headers.get("content-encoding"))) {
+            body = gunzip(body);
+        }
+
+        synchronized(this) {
+            String etag = headers.get("if-none-match");
+            m_requests.add(etag == null ? requestLine : requestLine + " If-None-Match: " + etag);
+
+            if(requestLine.startsWith("POST /scores")) {
+                if(m_failures > 0) {
+                    m_failures--;
+                    respond(out, m_failure, null, new byte[0]);
+                    return;
+                }
+                List<HighScore> scores = LeaderboardCodec.decodeScores(body);
+                if(scores.size() > m_maxBatch) {
+                    respond(out, "413 Payload Too Large", null, new byte[0]);
+                    return;
+                }
+                m_scores.addAll(scores);
+                m_version++;
+                respond(out, "204 No Content", null, new byte[0]);
+            }
+            else if(requestLine.startsWith("GET /top?grid=")) {
+                String grid = requestLine.substring("GET /top?grid=".length(), requestLine.indexOf(' ', 4));
+                String current = "\"" + m_version + "\"";
+                if(current.equals(etag)) {
+                    respond(out, "304 Not Modified", current, new byte[0]);
+                    return;
+                }
+                respond(out, "200 OK", current, LeaderboardCodec.encodeTop(top(grid)));
+            }
+            else {
+                respond(out, "404 Not Found", null, new byte[0]);
+            }
+        }
+    }
+
+    private List<HighScore> top(String grid) {
+        List<HighScore> top = new ArrayList<>();
+        for(HighScore score : m_scores) {
+            if(score._grid.equals(grid)) {
+                top.add(score);
+            }
+        }
+        Collections.sort(top, new Comparator<HighScore>() {
+            public int compare(HighScore o1, HighScore o2) {
+                return Integer.compare(o2._score, o1._score);
+            }
+        });
+        return top.subList(0, Math.min(10, top.size()));
+    }
+
+    private static void respond(OutputStream out, String status, String etag, byte[] body) throws IOException {
+        String head = "HTTP/1.1 " + status + "\r\n" +
+                      (etag != null ? "ETag: " + etag + "\r\n" : "") +
+                      "Content-Length: " + body.length + "\r\n" +
+                      "Connection: close\r\n\r\n";
+        out.write(head.getBytes("US-ASCII"));
+        out.write(body);
+        out.flush();
+    }
+
+    private static byte[] gunzip(byte[] body) throws IOException {
+        InputStream in = new GZIPInputStream(new ByteArrayInputStream(body));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        for(int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+            out.write(buffer, 0, n);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        for(int b = in.read(); b != '\n'; b = in.read()) {
+            if(b < 0) throw new IOException("Connection closed");
+            if(b != '\r') line.write(b);
+        }
+        return line.toString("US-ASCII");
+    }
+}
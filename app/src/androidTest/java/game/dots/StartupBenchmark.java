@@ -0,0 +1,140 @@
+package game.dots;
+
+import android.app.Activity;
+import android.app.Application;
+import android.content.Intent;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.test.InstrumentationTestCase;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time from starting an activity until its window has drawn the first frame.
+ * The process is already running, so this measures warm starts of each activity.
+ * Cold starts need the process killed between runs, which an instrumentation
+ * running inside that process cannot do, see cold-start.sh in the project root.
+ * Results are written to logcat under the StartupBenchmark tag.
+ */
+public class StartupBenchmark extends InstrumentationTestCase {
+    private static final String TAG = "StartupBenchmark";
+    private static final int RUNS = 10;
+    private static final int TIMEOUT_SECONDS = 10;
+
+    public void testMainMenuFirstFrame() throws InterruptedException {
+        report("MainMenuActivity", measure(MainMenuActivity.class));
+    }
+
+    public void testPlayFirstFrame() throws InterruptedException {
+        report("PlayActivity", measure(PlayActivity.class));
+    }
+
+    /**Waits for the first draw of the decor view of the next activityClass to resume*/
+    private static class FirstFrame implements Application.ActivityLifecycleCallbacks {
+        private final Class<? extends Activity> m_activityClass;
+        private final CountDownLatch m_drawn = new CountDownLatch(1);
+        private volatile long m_time;
+        private boolean m_listening;
+
+        FirstFrame(Class<? extends Activity> activityClass) {
+            m_activityClass = activityClass;
+        }
+
+        long await() throws InterruptedException {
+            if(!m_drawn.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                throw new AssertionError(m_activityClass.getSimpleName() + " never drew a frame");
+            }
+            return m_time;
+        }
+
+        @Override
+        public void onActivityResumed(Activity activity) {
+            if(m_listening || activity.getClass() != m_activityClass) {
+                return;
+            }
+            m_listening = true;
+
+            //The window is only added after onResume, so its first traversal is still to come
+            final View decor = activity.getWindow().getDecorView();
+            decor.getViewTreeObserver().addOnDrawListener(new ViewTreeObserver.OnDrawListener() {
+                @Override
+                public void onDraw() {
+                    if(m_drawn.getCount() == 0) {
+                        return;
+                    }
+                    m_time = SystemClock.uptimeMillis();
+                    m_drawn.countDown();
+                    //A listener cannot be removed while the tree is being drawn
+                    final ViewTreeObserver.OnDrawListener listener = this;
+                    decor.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            decor.getViewTreeObserver().removeOnDrawListener(listener);
+                        }
+                    });
+                }
+            });
+        }
+
+        @Override
+        public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+        }
+
+        @Override
+        public void onActivityStarted(Activity activity) {
+        }
+
+        @Override
+        public void onActivityPaused(Activity activity) {
+        }
+
+        @Override
+        public void onActivityStopped(Activity activity) {
+        }
+
+        @Override
+        public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+        }
+
+        @Override
+        public void onActivityDestroyed(Activity activity) {
+        }
+    }
+
+    private long[] measure(Class<? extends Activity> activityClass) throws InterruptedException {
+        Application application = (Application) getInstrumentation().getTargetContext().getApplicationContext();
+        long[] times = new long[RUNS];
+        for(int i = 0; i < RUNS; i++) {
+            Intent intent = new Intent(getInstrumentation().getTargetContext(), activityClass);
+            intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+
+            FirstFrame firstFrame = new FirstFrame(activityClass);
+            application.registerActivityLifecycleCallbacks(firstFrame);
+            Activity activity = null;
+            try {
+                long start = SystemClock.uptimeMillis();
+                activity = getInstrumentation().startActivitySync(intent);
+                times[i] = firstFrame.await() - start;
+            }
+            finally {
+                application.unregisterActivityLifecycleCallbacks(firstFrame);
+                if(activity != null) {
+                    activity.finish();
+                }
+                getInstrumentation().waitForIdleSync();
+            }
+        }
+        return times;
+    }
+
+    private void report(String name, long[] times) {
+        Arrays.sort(times);
+        Log.i(TAG, name + " first frame: min " + times[0] + "ms, median " + times[times.length / 2] +
+                "ms, max " + times[times.length - 1] + "ms over " + times.length + " runs");
+    }
+}
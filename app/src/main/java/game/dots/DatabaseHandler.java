@@ -5,36 +5,139 @@ import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 public class DatabaseHandler extends SQLiteOpenHelper {
-    private static final int DB_VERSION = 1;
+    private static final int DB_VERSION = 5;
     private static final String DB_NAME = "HighScoresManager";
     private static final String TABLE_HIGHSCORES = "HighScores";
+    private static final String TABLE_STATS = "ScoreStats";
+    private static final String TABLE_HISTOGRAM = "ScoreHistogram";
+    private static final String TABLE_OUTBOX = "ScoreOutbox";
+    private static final String TABLE_GLOBAL = "GlobalScores";
+    private static final String TABLE_GLOBAL_ETAGS = "GlobalEtags";
 
     private static final String NAME = "name";
     private static final String SCORE = "score";
     private static final String GRID = "grid";
+    private static final String SEED = "seed";
+    private static final String MOVES = "moves";
+    private static final String GAMES = "games";
+    private static final String TOTAL = "total";
+    private static final String BEST = "best";
+    private static final String MEDIAN = "median";
+    private static final String P90 = "p90";
+    private static final String BUCKET = "bucket";
+    private static final String COUNT = "count";
+    private static final String ID = "id";
+    private static final String RANK = "rank";
+    private static final String ETAG = "etag";
+
+    private static final int ARCHIVE_MAGIC = 0x444F5453; //"DOTS"
+    private static final int ARCHIVE_VERSION = 1;
+    private static final int ARCHIVE_MAX_MOVES = 64 * 1024; //Far more than any recorded game
+
+    private final Context m_context;
 
     public DatabaseHandler(Context context) {
         super(context, DB_NAME, null, DB_VERSION);
+        m_context = context;
     }
 
     @Override
     public void onCreate(SQLiteDatabase db) {
         String CREATE_HIGHSCORE_TABLE = "CREATE TABLE " + TABLE_HIGHSCORES + "(" +
-                                        NAME + " TEXT, " + SCORE + " INTEGER, " + GRID + " TEXT)";
+                                        NAME + " TEXT, " + SCORE + " INTEGER, " + GRID + " TEXT, " +
+                                        SEED + " INTEGER, " + MOVES + " BLOB)";
         db.execSQL(CREATE_HIGHSCORE_TABLE);
+        createStatsTables(db);
+        createSyncTables(db);
+    }
+
+    private void createStatsTables(SQLiteDatabase db) {
+        String CREATE_STATS_TABLE = "CREATE TABLE " + TABLE_STATS + "(" +
+                                    GRID + " TEXT PRIMARY KEY, " + GAMES + " INTEGER, " + TOTAL + " INTEGER, " +
+                                    BEST + " INTEGER, " + MEDIAN + " BLOB, " + P90 + " BLOB)";
+        String CREATE_HISTOGRAM_TABLE = "CREATE TABLE " + TABLE_HISTOGRAM + "(" +
+                                        GRID + " TEXT, " + BUCKET + " INTEGER, " + COUNT + " INTEGER, " +
+                                        "PRIMARY KEY(" + GRID + ", " + BUCKET + "))";
+        db.execSQL(CREATE_STATS_TABLE);
+        db.execSQL(CREATE_HISTOGRAM_TABLE);
+    }
+
+    private void createSyncTables(SQLiteDatabase db) {
+        String CREATE_OUTBOX_TABLE = "CREATE TABLE " + TABLE_OUTBOX + "(" +
+                                     ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                                     NAME + " TEXT, " + SCORE + " INTEGER, " + GRID + " TEXT, " +
+                                     SEED + " INTEGER, " + MOVES + " BLOB)";
+        String CREATE_GLOBAL_TABLE = "CREATE TABLE " + TABLE_GLOBAL + "(" +
+                                     GRID + " TEXT, " + RANK + " INTEGER, " + NAME + " TEXT, " + SCORE + " INTEGER, " +
+                                     "PRIMARY KEY(" + GRID + ", " + RANK + "))";
+        String CREATE_ETAGS_TABLE = "CREATE TABLE " + TABLE_GLOBAL_ETAGS + "(" +
+                                    GRID + " TEXT PRIMARY KEY, " + ETAG + " TEXT)";
+        db.execSQL(CREATE_OUTBOX_TABLE);
+        db.execSQL(CREATE_GLOBAL_TABLE);
+        db.execSQL(CREATE_ETAGS_TABLE);
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        // Drop older table if existed
-        db.execSQL("DROP TABLE IF EXISTS " + TABLE_HIGHSCORES);
+        // Version 2 added the game recording, older scores are kept without one
+        if(oldVersion < 2) {
+            db.execSQL("ALTER TABLE " + TABLE_HIGHSCORES + " ADD COLUMN " + SEED + " INTEGER");
+            db.execSQL("ALTER TABLE " + TABLE_HIGHSCORES + " ADD COLUMN " + MOVES + " BLOB");
+        }
+
+        // Version 3 added the statistics, filled once from the scores already saved
+        if(oldVersion < 3) {
+            createStatsTables(db);
+            fillStats(db);
+        }
+
+        // Version 4 added the leaderboard outbox and the cached global scores
+        if(oldVersion < 4) {
+            createSyncTables(db);
+        }
+
+        // Version 5 keeps the first scores of a grid exactly, the sketches are built again
+        if(oldVersion >= 3 && oldVersion < 5) {
+            db.execSQL("DELETE FROM " + TABLE_STATS);
+            db.execSQL("DELETE FROM " + TABLE_HISTOGRAM);
+            fillStats(db);
+        }
+    }
 
-        // Create tables again
-        onCreate(db);
+    /**Fills the empty summary tables from the scores already saved*/
+    private void fillStats(SQLiteDatabase db) {
+        HashMap<String, GridStats> stats = new HashMap<>();
+        Cursor cursor = db.rawQuery("SELECT " + GRID + ", " + SCORE + " FROM " + TABLE_HIGHSCORES, null);
+        if(cursor.moveToFirst()) {
+            do {
+                GridStats gridStats = stats.get(cursor.getString(0));
+                if(gridStats == null) {
+                    gridStats = GridStats.load(db, cursor.getString(0));
+                    stats.put(cursor.getString(0), gridStats);
+                }
+                gridStats.add(cursor.getInt(1));
+            } while(cursor.moveToNext());
+        }
+        cursor.close();
+        for(GridStats gridStats : stats.values()) {
+            gridStats.save(db);
+        }
     }
 
     /*TODO Væri hægt að tékka hvort að þetta score sé meira heldur en
@@ -42,17 +145,139 @@ public class DatabaseHandler extends SQLiteOpenHelper {
      *TODO listann
      */
     public void addScore(HighScore score) {
+        addScore(score, false);
+    }
+
+    /**Saves the score, and when queue is set also puts it in the outbox for LeaderboardSync*/
+    public void addScore(HighScore score, boolean queue) {
         SQLiteDatabase db = this.getWritableDatabase();
 
         ContentValues values = new ContentValues();
         values.put(NAME, score._name);
         values.put(SCORE, score._score);
         values.put(GRID, score._grid);
+        if(score._moves != null) {
+            values.put(SEED, score._seed);
+            values.put(MOVES, score._moves);
+        }
 
-        db.insert(TABLE_HIGHSCORES, null, values);
+        db.beginTransaction();
+        try {
+            db.insert(TABLE_HIGHSCORES, null, values);
+            updateStats(db, score._grid, score._score);
+            if(queue) {
+                db.insert(TABLE_OUTBOX, null, values);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
         db.close();
     }
 
+    /**Adds one score to the summary tables, so reading them never needs the score rows*/
+    private void updateStats(SQLiteDatabase db, String grid, int score) {
+        GridStats stats = GridStats.load(db, grid);
+        stats.add(score);
+        stats.save(db);
+    }
+
+    /**
+     * The summary row of one grid, loaded once, changed in memory and written
+     * back, so adding many scores to a grid costs one read and one write.
+     */
+    private static class GridStats {
+        String grid;
+        int games;
+        long total;
+        int best;
+        QuantileSketch median;
+        QuantileSketch p90;
+        int[] added; //Histogram counts added since loading
+
+        static GridStats load(SQLiteDatabase db, String grid) {
+            GridStats stats = new GridStats();
+            stats.grid = grid;
+            stats.median = new QuantileSketch(0.5);
+            stats.p90 = new QuantileSketch(0.9);
+            stats.added = new int[0];
+
+            Cursor cursor = db.rawQuery("SELECT " + GAMES + ", " + TOTAL + ", " + BEST + ", " + MEDIAN + ", " + P90 +
+                                        " FROM " + TABLE_STATS + " WHERE " + GRID + "=?", new String[] {grid});
+            if(cursor.moveToFirst()) {
+                stats.games = cursor.getInt(0);
+                stats.total = cursor.getLong(1);
+                stats.best = cursor.getInt(2);
+                stats.median = QuantileSketch.fromByteArray(0.5, cursor.getBlob(3));
+                stats.p90 = QuantileSketch.fromByteArray(0.9, cursor.getBlob(4));
+            }
+            cursor.close();
+            return stats;
+        }
+
+        void add(int score) {
+            best = games == 0 ? score : Math.max(best, score);
+            games++;
+            total += score;
+            median.add(score);
+            p90.add(score);
+
+            int bucket = score / ScoreStats.BUCKET;
+            if(bucket >= added.length) {
+                added = Arrays.copyOf(added, bucket + 1);
+            }
+            added[bucket]++;
+        }
+
+        void save(SQLiteDatabase db) {
+            ContentValues values = new ContentValues();
+            values.put(GRID, grid);
+            values.put(GAMES, games);
+            values.put(TOTAL, total);
+            values.put(BEST, best);
+            values.put(MEDIAN, median.toByteArray());
+            values.put(P90, p90.toByteArray());
+            db.insertWithOnConflict(TABLE_STATS, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+
+            for(int bucket = 0; bucket < added.length; bucket++) {
+                if(added[bucket] == 0) {
+                    continue;
+                }
+                String[] args = {grid, Integer.toString(bucket)};
+                db.execSQL("INSERT OR IGNORE INTO " + TABLE_HISTOGRAM + "(" + GRID + ", " + BUCKET + ", " + COUNT + ")" +
+                           " VALUES(?, ?, 0)", args);
+                db.execSQL("UPDATE " + TABLE_HISTOGRAM + " SET " + COUNT + "=" + COUNT + "+" + added[bucket] +
+                           " WHERE " + GRID + "=? AND " + BUCKET + "=?", args);
+            }
+            added = new int[0];
+        }
+    }
+
+    /**Statistics for one grid, read from the summary tables only*/
+    public ScoreStats getStats(String grid) {
+        ScoreStats stats = new ScoreStats(grid);
+        SQLiteDatabase db = this.getReadableDatabase();
+
+        GridStats gridStats = GridStats.load(db, grid);
+        stats._games = gridStats.games;
+        stats._total = gridStats.total;
+        stats._best = gridStats.best;
+        stats._median = gridStats.median.get();
+        stats._p90 = gridStats.p90.get();
+
+        Cursor cursor = db.rawQuery("SELECT " + BUCKET + ", " + COUNT + " FROM " + TABLE_HISTOGRAM +
+                             " WHERE " + GRID + "=? ORDER BY " + BUCKET, new String[] {grid});
+        if(cursor.moveToLast()) {
+            stats._histogram = new int[cursor.getInt(0) + 1];
+            do {
+                stats._histogram[cursor.getInt(0)] = cursor.getInt(1);
+            } while(cursor.moveToPrevious());
+        }
+        cursor.close();
+
+        return stats;
+    }
+
     public ArrayList<HighScore> getAllScores(String grid) {
         ArrayList<HighScore> scoreList = new ArrayList<>();
 
@@ -78,9 +303,274 @@ public class DatabaseHandler extends SQLiteOpenHelper {
         return scoreList;
     }
 
+    /**
+     * Replays every recorded game and returns the scores that do not match their
+     * recording. A score on a grid that cannot be read cannot be checked and is
+     * returned as well.
+     */
+    public ArrayList<HighScore> getInvalidScores() {
+        ArrayList<HighScore> invalid = new ArrayList<>();
+
+        String selectQuery = "SELECT " + NAME + ", " + SCORE + ", " + GRID + ", " + SEED + ", " + MOVES +
+                                " FROM " + TABLE_HIGHSCORES +
+                                " WHERE " + MOVES + " IS NOT NULL" +
+                                " ORDER BY " + GRID;
+
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.rawQuery(selectQuery, null);
+
+        Replay replay = null;
+        String replayGrid = null;
+        if(cursor.moveToFirst()) {
+            do {
+                HighScore score = new HighScore();
+                score._name = cursor.getString(0);
+                score._score = cursor.getInt(1);
+                score._grid = cursor.getString(2);
+                score._seed = cursor.getLong(3);
+                score._moves = cursor.getBlob(4);
+
+                String grid = score._grid == null ? "" : score._grid;
+                if(!grid.equals(replayGrid)) {
+                    replayGrid = grid;
+                    int size = Replay.gridSize(grid);
+                    replay = size > 0 ? new Replay(size) : null;
+                }
+                if(replay == null || replay.play(score._seed, score._moves) != score._score) {
+                    invalid.add(score);
+                }
+            } while(cursor.moveToNext());
+        }
+
+        cursor.close();
+
+        return invalid;
+    }
+
+    /**
+     * Writes every score row, with its recording if it has one, to out. Rows are
+     * read from a cursor and written one at a time, so the whole table is never
+     * held in memory. Returns the number of rows written.
+     */
+    public int exportScores(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(out)));
+        int rows = 0;
+        try {
+            data.writeInt(ARCHIVE_MAGIC);
+            data.writeByte(ARCHIVE_VERSION);
+
+            String selectQuery = "SELECT " + NAME + ", " + SCORE + ", " + GRID + ", " + SEED + ", " + MOVES +
+                                    " FROM " + TABLE_HIGHSCORES;
+
+            SQLiteDatabase db = this.getReadableDatabase();
+            Cursor cursor = db.rawQuery(selectQuery, null);
+            try {
+                if(cursor.moveToFirst()) {
+                    do {
+                        data.writeBoolean(true);
+                        data.writeUTF(cursor.isNull(0) ? "" : cursor.getString(0));
+                        data.writeInt(cursor.getInt(1));
+                        data.writeUTF(cursor.getString(2));
+                        byte[] moves = cursor.isNull(4) ? null : cursor.getBlob(4);
+                        data.writeBoolean(moves != null);
+                        if(moves != null) {
+                            data.writeLong(cursor.getLong(3));
+                            data.writeInt(moves.length);
+                            data.write(moves);
+                        }
+                        rows++;
+                    } while(cursor.moveToNext());
+                }
+            } finally {
+                cursor.close();
+            }
+
+            data.writeBoolean(false);
+        } finally {
+            data.close();
+        }
+        return rows;
+    }
+
+    /**The size of an imported grid name, which must be one of the grids the game offers*/
+    private int archiveGridSize(String grid) throws IOException {
+        for(String size : m_context.getResources().getStringArray(R.array.gridValues)) {
+            if(grid.equals(size + "x" + size)) {
+                return Integer.parseInt(size);
+            }
+        }
+        throw new IOException("Unknown grid " + grid);
+    }
+
+    /**
+     * Adds the rows of a file written by exportScores(). Everything goes in one
+     * transaction through one compiled insert, and the statistics of each grid
+     * are written once at the end, so nothing is kept in memory but the current
+     * row. A row with an unknown grid or a score no game can reach fails the
+     * whole import and nothing is added. Returns the number of rows added.
+     */
+    public int importScores(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(new GZIPInputStream(in)));
+        if(data.readInt() != ARCHIVE_MAGIC || data.readByte() != ARCHIVE_VERSION) {
+            throw new IOException("Not a score archive");
+        }
+
+        SQLiteDatabase db = this.getWritableDatabase();
+        SQLiteStatement insert = db.compileStatement("INSERT INTO " + TABLE_HIGHSCORES + "(" +
+                                                     NAME + ", " + SCORE + ", " + GRID + ", " + SEED + ", " + MOVES +
+                                                     ") VALUES(?, ?, ?, ?, ?)");
+        HashMap<String, GridStats> stats = new HashMap<>();
+        int rows = 0;
+
+        db.beginTransaction();
+        try {
+            while(data.readBoolean()) {
+                String name = data.readUTF();
+                int score = data.readInt();
+                String grid = data.readUTF();
+                int size = archiveGridSize(grid);
+                //Every move clearing the whole board is the most a game can score
+                if(score < 0 || score > Replay.MOVES * size * size) {
+                    throw new IOException("Impossible score " + score + " on " + grid);
+                }
+
+                insert.clearBindings();
+                insert.bindString(1, name);
+                insert.bindLong(2, score);
+                insert.bindString(3, grid);
+                if(data.readBoolean()) {
+                    insert.bindLong(4, data.readLong());
+                    int length = data.readInt();
+                    if(length < 0 || length > ARCHIVE_MAX_MOVES) {
+                        throw new IOException("Bad recording length " + length);
+                    }
+                    byte[] moves = new byte[length];
+                    data.readFully(moves);
+                    insert.bindBlob(5, moves);
+                }
+                insert.executeInsert();
+
+                GridStats gridStats = stats.get(grid);
+                if(gridStats == null) {
+                    gridStats = GridStats.load(db, grid);
+                    stats.put(grid, gridStats);
+                }
+                gridStats.add(score);
+                rows++;
+            }
+            for(GridStats gridStats : stats.values()) {
+                gridStats.save(db);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            insert.close();
+            data.close();
+        }
+        return rows;
+    }
+
+    /**The oldest scores waiting to be uploaded, _id tells how far a batch went*/
+    public ArrayList<HighScore> getOutbox(int limit) {
+        ArrayList<HighScore> scoreList = new ArrayList<>();
+
+        String selectQuery = "SELECT " + ID + ", " + NAME + ", " + SCORE + ", " + GRID + ", " + SEED + ", " + MOVES +
+                                " FROM " + TABLE_OUTBOX +
+                                " ORDER BY " + ID +
+                                " LIMIT " + limit;
+
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.rawQuery(selectQuery, null);
+
+        if(cursor.moveToFirst()) {
+            do {
+                HighScore score = new HighScore();
+                score._id = cursor.getLong(0);
+                score._name = cursor.getString(1);
+                score._score = cursor.getInt(2);
+                score._grid = cursor.getString(3);
+                if(!cursor.isNull(5)) {
+                    score._seed = cursor.getLong(4);
+                    score._moves = cursor.getBlob(5);
+                }
+                scoreList.add(score);
+            } while(cursor.moveToNext());
+        }
+
+        cursor.close();
+
+        return scoreList;
+    }
+
+    /**Removes the uploaded scores, everything up to and including lastId*/
+    public void removeFromOutbox(long lastId) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        db.delete(TABLE_OUTBOX, ID + "<=?", new String[] {Long.toString(lastId)});
+    }
+
+    public ArrayList<HighScore> getGlobalScores(String grid) {
+        ArrayList<HighScore> scoreList = new ArrayList<>();
+
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.rawQuery("SELECT " + NAME + ", " + SCORE + " FROM " + TABLE_GLOBAL +
+                                    " WHERE " + GRID + "=? ORDER BY " + RANK, new String[] {grid});
+
+        if(cursor.moveToFirst()) {
+            do {
+                scoreList.add(new HighScore(cursor.getString(0), cursor.getInt(1), grid));
+            } while(cursor.moveToNext());
+        }
+
+        cursor.close();
+
+        return scoreList;
+    }
+
+    /**The ETag of the cached global scores for grid, or null if nothing is cached*/
+    public String getGlobalEtag(String grid) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.rawQuery("SELECT " + ETAG + " FROM " + TABLE_GLOBAL_ETAGS +
+                                    " WHERE " + GRID + "=?", new String[] {grid});
+        String etag = cursor.moveToFirst() ? cursor.getString(0) : null;
+        cursor.close();
+        return etag;
+    }
+
+    /**Replaces the cached global scores for grid together with their ETag*/
+    public void setGlobalScores(String grid, ArrayList<HighScore> scores, String etag) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            db.delete(TABLE_GLOBAL, GRID + "=?", new String[] {grid});
+            for(int rank = 0; rank < scores.size(); rank++) {
+                ContentValues values = new ContentValues();
+                values.put(GRID, grid);
+                values.put(RANK, rank);
+                values.put(NAME, scores.get(rank)._name);
+                values.put(SCORE, scores.get(rank)._score);
+                db.insert(TABLE_GLOBAL, null, values);
+            }
+            ContentValues values = new ContentValues();
+            values.put(GRID, grid);
+            values.put(ETAG, etag);
+            db.insertWithOnConflict(TABLE_GLOBAL_ETAGS, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
     public void clearDB()
     {
         SQLiteDatabase db = this.getWritableDatabase();
-        db.execSQL("DELETE FROM " + TABLE_HIGHSCORES);
+        db.beginTransaction();
+        try {
+            db.execSQL("DELETE FROM " + TABLE_HIGHSCORES);
+            db.execSQL("DELETE FROM " + TABLE_STATS);
+            db.execSQL("DELETE FROM " + TABLE_HISTOGRAM);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
     }
 }
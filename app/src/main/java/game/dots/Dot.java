@@ -13,41 +13,33 @@ public class Dot {
     public RectF circle, circle2; //circle2 is a copy I'm using to revert animations
     int cX, cY;
 
-    public Dot(int x, int y) {
+    public Dot(int x, int y, Random random) {
         this.x = this.x2 = x; //testing x2
         this.y = this.y2 = y; //testing y2
         circle = new RectF();
         circle2 = new RectF(); //testing
         dotPaint = new Paint();
-        setColor(this);
+        this.color = randomColor(random);
         dotPaint.setColor(this.color);
         dotPaint.setStyle(Paint.Style.FILL_AND_STROKE);
         dotPaint.setAntiAlias(true);
     }
 
-    static private void setColor(Dot dot) {
-        Random random = new Random();
-        int randomColor = random.nextInt(5);
-        switch (randomColor){
-            case 0:
-                dot.color = Color.WHITE;
-                break;
-            case 1:
-                dot.color = Color.CYAN;
-                break;
-            case 2:
-                dot.color = Color.GRAY;
-                break;
-            case 3:
-                dot.color = Color.RED;
-                break;
-            case 4:
-                dot.color = Color.GREEN;
-                break;
-            default:
-                dot.color = Color.WHITE;
-                break;
+    static final int[] COLORS = {Color.WHITE, Color.CYAN, Color.GRAY, Color.RED, Color.GREEN};
+
+    /**Every color is drawn from the game's Random so a game can be replayed from its seed*/
+    static int randomColor(Random random) {
+        return COLORS[random.nextInt(COLORS.length)];
+    }
+
+    /**Position of the color in COLORS, used to store colors in a single byte*/
+    static int colorIndex(int color) {
+        for(int i = 0; i < COLORS.length; i++) {
+            if(COLORS[i] == color) {
+                return i;
+            }
         }
+        return 0;
     }
 
     public boolean adjacent(Dot lastDot) {
@@ -56,11 +48,6 @@ public class Dot {
         return (dx + dy == 1);
     }
 
-    public void changeColor() {
-        setColor(this);
-        dotPaint.setColor(this.color);
-    }
-
     public void changeColor(int color) {
         this.color = color;
         dotPaint.setColor(this.color);
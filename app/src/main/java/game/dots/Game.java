@@ -2,10 +2,10 @@ package game.dots;
 
 import android.animation.Animator;
 import android.animation.AnimatorListenerAdapter;
-import android.animation.AnimatorSet;
 import android.animation.ValueAnimator;
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
@@ -13,6 +13,7 @@ import android.graphics.Path;
 import android.graphics.Point;
 import android.graphics.Rect;
 import android.media.MediaPlayer;
+import android.os.AsyncTask;
 import android.os.Vibrator;
 import android.preference.PreferenceManager;
 import android.support.annotation.NonNull;
@@ -26,21 +27,23 @@ import android.widget.TextView;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.Random;
 
 public class Game extends View {
 
     //region Declaring variables
     private boolean m_moving;
-    private boolean m_vibrate;
-    private boolean m_sound;
+    private volatile boolean m_vibrate;
+    private volatile boolean m_sound;
     private boolean m_gameOver;
+    private boolean m_detached;
     private Rect m_rect;
+    private Bitmap m_gridBitmap;
     private Paint m_paint;
     private Path m_path;
     private Paint m_paintPath;
-    private Vibrator m_vibrator;
+    private volatile Vibrator m_vibrator;
 
     private int NUM_CELLS, m_cellWidth, m_cellHeight;
     private int m_score;
@@ -52,11 +55,15 @@ public class Game extends View {
     TextView m_movesView;
     ArrayList<Dot> m_dots;
     List<Point> m_dotPath;
+    int[] m_positions;
     SharedPreferences m_sp;
     MediaPlayer m_mp;
+    MoveJournal m_journal;
+    MoveJournal.Cells m_cells;
+    Random m_random;
+    GameRecord m_record;
 
-    static List<Animator> animations;
-    static AnimatorSet animatorSet;
+    ValueAnimator m_fall;
     //endregion
 
     //region Constructor, initializing variables
@@ -76,6 +83,7 @@ public class Game extends View {
         /**Getting values and configuring settings*/
         NUM_CELLS = Integer.parseInt(m_sp.getString("gridSize", "6"));
         m_grid = NUM_CELLS + "x" + NUM_CELLS;
+        m_positions = new int[NUM_CELLS * NUM_CELLS];
 
         m_paint.setColor(Color.WHITE);
         m_paint.setStyle(Paint.Style.STROKE);
@@ -88,18 +96,51 @@ public class Game extends View {
         m_paintPath.setStyle(Paint.Style.STROKE);
         m_paintPath.setAntiAlias(true);
 
-        m_vibrate = m_sp.getBoolean("vibrations", false);
-        m_vibrator = (Vibrator) context.getSystemService(Context.VIBRATOR_SERVICE);
+        /**Sound and haptics are not needed for the first frame, they warm up in the background*/
+        new AsyncTask<Void, Void, MediaPlayer>() {
+            @Override
+            protected MediaPlayer doInBackground(Void... params) {
+                m_vibrate = m_sp.getBoolean("vibrations", false);
+                if(m_vibrate) {
+                    m_vibrator = (Vibrator) getContext().getSystemService(Context.VIBRATOR_SERVICE);
+                }
+                m_sound = m_sp.getBoolean("sounds", false);
+                if(m_sound) {
+                    return MediaPlayer.create(getContext(), R.raw.pop);
+                }
+                return null;
+            }
+
+            @Override
+            protected void onPostExecute(MediaPlayer mp) {
+                //The view may have gone away while the sound was loading
+                if(mp != null && m_detached) {
+                    mp.release();
+                }
+                else {
+                    m_mp = mp;
+                }
+            }
+        }.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
 
-        m_sound = m_sp.getBoolean("sounds", false);
-        m_mp = MediaPlayer.create(getContext(), R.raw.pop);
         m_score = 0;
         m_moves = 30;
 
         m_gameOver = false;
 
-        animations = new LinkedList<>();
-        animatorSet = new AnimatorSet();
+        newRecord();
+        m_journal = new MoveJournal(NUM_CELLS);
+        m_cells = new MoveJournal.Cells() {
+            @Override
+            public int getColor(int position) {
+                return Dot.colorIndex(m_dots.get(position).color);
+            }
+
+            @Override
+            public void setColor(int position, int color) {
+                m_dots.get(position).changeColor(Dot.COLORS[color]);
+            }
+        };
     }
     //endregion
 
@@ -120,6 +161,29 @@ public class Game extends View {
         int boardHeight = (yNew - getPaddingTop() - getPaddingBottom());
         m_cellWidth = boardWidth / NUM_CELLS;
         m_cellHeight = boardHeight / NUM_CELLS;
+
+        //The grid is drawn again at the new size on the next frame
+        if(m_gridBitmap != null) {
+            m_gridBitmap.recycle();
+            m_gridBitmap = null;
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        m_detached = true;
+        if(m_mp != null) {
+            m_mp.release();
+            m_mp = null;
+        }
+        if(m_gridBitmap != null) {
+            m_gridBitmap.recycle();
+            m_gridBitmap = null;
+        }
+        if(m_fall != null) {
+            m_fall.cancel();
+        }
     }
     //endregion
 
@@ -131,15 +195,10 @@ public class Game extends View {
             createDots();
         }
         /**Draw the grid*/
-        for (int row = 0; row < NUM_CELLS; row++) {
-            for (int col = 0; col < NUM_CELLS; col++) {
-                int x = col * m_cellWidth;
-                int y = row * m_cellHeight;
-                m_rect.set(x, y, x + m_cellWidth, y + m_cellHeight);
-                m_rect.offset(getPaddingLeft(), getPaddingTop());
-                canvas.drawRect(m_rect, m_paint);
-            }
+        if(m_gridBitmap == null) {
+            createGridBitmap();
         }
+        canvas.drawBitmap(m_gridBitmap, 0, 0, null);
 
         /**Draw the connection*/
         if(!m_dotPath.isEmpty() && m_moving) {
@@ -159,6 +218,21 @@ public class Game extends View {
             canvas.drawOval(current.circle, current.dotPaint);
         }
     }
+
+    /**The grid never changes, it is drawn once into a bitmap that is copied on every frame*/
+    private void createGridBitmap() {
+        m_gridBitmap = Bitmap.createBitmap(getWidth(), getHeight(), Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(m_gridBitmap);
+        for (int row = 0; row < NUM_CELLS; row++) {
+            for (int col = 0; col < NUM_CELLS; col++) {
+                int x = col * m_cellWidth;
+                int y = row * m_cellHeight;
+                m_rect.set(x, y, x + m_cellWidth, y + m_cellHeight);
+                m_rect.offset(getPaddingLeft(), getPaddingTop());
+                canvas.drawRect(m_rect, m_paint);
+            }
+        }
+    }
     //endregion
 
     @Override
@@ -177,11 +251,14 @@ public class Game extends View {
 
         //region Touch - DOWN
         if (event.getAction() == MotionEvent.ACTION_DOWN) {
+            //A new move waits for the dots to finish falling, the journal
+            //only records the refill colors once the last move has landed
+            if(m_fall != null && m_fall.isRunning()) {
+                return true;
+            }
             m_dotPath.add(new Point(squareX, squareY));
             m_paintPath.setColor(current.color);
             m_moving = true;
-            animations.clear();
-            animatorSet = new AnimatorSet();
         }
         //endregion
 
@@ -192,17 +269,20 @@ public class Game extends View {
             //region Backwards or Circle
             if(m_dotPath.size() > 1 && m_dotPath.contains(currentPoint)) {
                 Point secondLast = m_dotPath.get(m_dotPath.size() - 2);
+                Point lastPoint = m_dotPath.get(m_dotPath.size() - 1);
 
                 //region Going Backwards
                 if(secondLast.equals(currentPoint)) {
-                    m_dotPath.remove(m_dotPath.size() - 1);
                     invalidate();
+                    m_dotPath.remove(m_dotPath.size() - 1);
                 }
                 //endregion
 
                 //region Connecting a circle
-                else if(!m_dotPath.get(m_dotPath.size()-1).equals(currentPoint)) {
+                else if(!lastPoint.equals(currentPoint) && current.adjacent(getDot(lastPoint.x, lastPoint.y))) {
                     m_moving = false;
+                    m_record.addMove(positions(), m_dotPath.size(), currentPoint.y * NUM_CELLS + currentPoint.x);
+                    invalidate();
                     m_dotPath.clear();
                     for (int i = 0; i < m_dots.size(); i++) {
                         Dot currentDot = m_dots.get(i);
@@ -211,8 +291,8 @@ public class Game extends View {
                             m_dotPath.add(currentPoint);
                         }
                     }
-                    setScore(m_dotPath.size());
                     moveDots();
+                    setScore(m_dotPath.size());
                     feedback();
                     m_dotPath.clear();
                 }
@@ -239,14 +319,15 @@ public class Game extends View {
 
         //region Touch - UP
         else if (event.getAction() == MotionEvent.ACTION_UP && m_moving) {
+            invalidate();
             if(m_dotPath.size() > 1) {
-                setScore(m_dotPath.size());
+                m_record.addMove(positions(), m_dotPath.size(), -1);
                 moveDots();
+                setScore(m_dotPath.size());
                 feedback();
             }
             m_dotPath.clear();
             m_moving = false;
-            invalidate();
         }
         //endregion
 
@@ -254,33 +335,72 @@ public class Game extends View {
     }
 
     public void feedback() {
-        if(m_vibrate) {
+        if(m_vibrate && m_vibrator != null) {
             m_vibrator.vibrate(100);
         }
-        if(m_sound) {
+        if(m_sound && m_mp != null) {
             m_mp.seekTo(0);
             m_mp.start();
         }
     }
 
     public void setScore(int i) {
-        View v = (View) getParent();
-        m_scoreView = (TextView) v.findViewById(R.id.score);
         m_score += i;
-        m_scoreView.setText("Score: " + Integer.toString(m_score));
         m_moves --;
-        m_movesView = (TextView) v.findViewById(R.id.moves);
         if(m_moves <= 0 || m_gameOver) {
-            Popup p = new Popup(this.getContext(), m_score,m_grid);
+            Popup p = new Popup(this.getContext(), m_score, m_grid, m_record);
             m_score = 0;
             m_moves = 30;
+            newRecord();
+            m_journal.clear();
             m_dots.clear();
             createDots();
+            invalidate();
         }
+        showScore();
+    }
+
+    private void showScore() {
+        View v = (View) getParent();
+        m_scoreView = (TextView) v.findViewById(R.id.score);
+        m_movesView = (TextView) v.findViewById(R.id.moves);
         m_scoreView.setText("Score: " + Integer.toString(m_score));
         m_movesView.setText("Moves: " + Integer.toString(m_moves));
     }
 
+    /**Takes back the last move, only the cells it changed are recolored*/
+    public void undo() {
+        if(m_moving) {
+            return;
+        }
+        int points = m_journal.undo(m_cells);
+        if(points < 0) {
+            return;
+        }
+        m_record.addUndo();
+        m_score -= points;
+        m_moves ++;
+        m_gameOver = false;
+        showScore();
+        invalidate();
+    }
+
+    public void redo() {
+        if(m_moving) {
+            return;
+        }
+        int points = m_journal.redo(m_cells);
+        if(points < 0) {
+            return;
+        }
+        m_record.addRedo();
+        m_score += points;
+        m_moves --;
+        m_gameOver = gameOver();
+        showScore();
+        invalidate();
+    }
+
     private void moveDots() {
         Point currentPoint;
         Dot currentDot = null;
@@ -295,6 +415,12 @@ public class Game extends View {
             }
         });
 
+        final int token = m_journal.begin(positions(), pathSize, pathSize, m_cells);
+
+        //Every dot that slides down onto the one below it, with where it starts and ends
+        final List<Dot[]> moves = new ArrayList<>();
+        final List<float[]> tops = new ArrayList<>();
+
         Dot temp;
         for(int i = 0; i < pathSize; i++) {
             currentPoint = m_dotPath.get(i);
@@ -306,74 +432,61 @@ public class Game extends View {
             while(y-- > 0) {
                 temp = getDot(x, y);
 
-                animateMove(temp, currentDot);
+                moves.add(new Dot[] {temp, currentDot});
+                tops.add(new float[] {temp.circle.top, currentDot.circle.top});
 
                 currentDot = temp;
             }
 
-            temp = new Dot(currentDot.x, currentDot.y - 1);
+            temp = new Dot(currentDot.x, currentDot.y - 1, m_random);
             temp.circle.offsetTo(remember.circle.left, currentDot.circle.top - m_cellHeight);
-            animateMove(temp, currentDot);
+            moves.add(new Dot[] {temp, currentDot});
+            tops.add(new float[] {temp.circle.top, currentDot.circle.top});
         }
         lastDot = currentDot;
+        final int lastColor = Dot.randomColor(m_random);
 
-        animatorSet.playTogether(animations);
-        animatorSet.setDuration(200);
-        animatorSet.start();
-        animatorSet.addListener(new Animator.AnimatorListener() {
-            @Override
-            public void onAnimationStart(Animator animator) {}
-
-            @Override
-            public void onAnimationEnd(Animator animation) {
-                assert lastDot != null;
-                lastDot.changeColor();
-                m_gameOver = gameOver();
-            }
-
-            @Override
-            public void onAnimationCancel(Animator animator) {}
-
-            @Override
-            public void onAnimationRepeat(Animator animator) {}
-        });
-    }
-
-    public void animateMove(final Dot from, final Dot to) {
-
-        final float topFrom = from.circle.top;
-        final float topTo = to.circle.top;
-        //System.out.println("->topFrom: " + topFrom + "\n->topTo: " + topTo + "- - - - - - - -");
-        final ValueAnimator animator = new ValueAnimator();
-        animator.removeAllUpdateListeners();
-        animator.setFloatValues(0.0f, 1.0f);
-        animator.setInterpolator(new AccelerateDecelerateInterpolator());
-        animator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
+        //One animator moves every falling dot, so each frame is a single invalidate()
+        m_fall = ValueAnimator.ofFloat(0.0f, 1.0f);
+        m_fall.setDuration(200);
+        m_fall.setInterpolator(new AccelerateDecelerateInterpolator());
+        m_fall.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
             @Override
             public void onAnimationUpdate(ValueAnimator animation) {
                 float ratio = (float) animation.getAnimatedValue();
-                int y = (int) ((1.0 - ratio) * topFrom + ratio * topTo);
-                from.circle.offsetTo(from.circle.left, y);
+                for(int i = 0; i < moves.size(); i++) {
+                    Dot from = moves.get(i)[0];
+                    float[] top = tops.get(i);
+                    from.circle.offsetTo(from.circle.left, (int) ((1.0 - ratio) * top[0] + ratio * top[1]));
+                }
                 invalidate();
             }
         });
-        animator.addListener(new AnimatorListenerAdapter() {
+        m_fall.addListener(new AnimatorListenerAdapter() {
             @Override
             public void onAnimationEnd(Animator animation) {
-                int x = from.cX;
-                int y = from.cY;
-                from.circle.set(x, y, m_cellWidth + x, m_cellHeight + y);
-                from.circle.offset(getPaddingLeft(), getPaddingTop());
-                from.circle.inset(m_cellWidth * 0.2f, m_cellHeight * 0.2f);
-
-                int col = from.color;
-                from.changeColor(to.color);
-                to.changeColor(col);
-                from.circle.offsetTo(from.circle.left, from.circle.top);
-
+                //Put every dot back in its cell and let the colors fall instead
+                for(int i = 0; i < moves.size(); i++) {
+                    Dot from = moves.get(i)[0];
+                    Dot to = moves.get(i)[1];
+                    int x = from.cX;
+                    int y = from.cY;
+                    from.circle.set(x, y, m_cellWidth + x, m_cellHeight + y);
+                    from.circle.offset(getPaddingLeft(), getPaddingTop());
+                    from.circle.inset(m_cellWidth * 0.2f, m_cellHeight * 0.2f);
+
+                    int col = from.color;
+                    from.changeColor(to.color);
+                    to.changeColor(col);
+                }
+                assert lastDot != null;
+                lastDot.changeColor(lastColor);
+                m_journal.commit(token, m_cells);
+                m_gameOver = gameOver();
+                invalidate();
             }
         });
-        animations.add(animator);
+        m_fall.start();
     }
 
     private boolean gameOver() {
@@ -407,7 +520,7 @@ public class Game extends View {
             for(int col = 0; col < NUM_CELLS; ++col) {
                 int x = col * m_cellWidth;
                 int y = row * m_cellHeight;
-                Dot dot = new Dot(x / m_cellWidth, y / m_cellHeight);
+                Dot dot = new Dot(x / m_cellWidth, y / m_cellHeight, m_random);
                 dot.circle.set(x, y, m_cellWidth + x, m_cellHeight + y);
                 dot.circle.offset(getPaddingLeft(), getPaddingTop());
                 dot.circle.inset(m_cellWidth * 0.2f, m_cellHeight * 0.2f);
@@ -419,6 +532,22 @@ public class Game extends View {
         m_gameOver = false;
     }
 
+    /**The path as cell positions, y * NUM_CELLS + x, for the record and the journal*/
+    private int[] positions() {
+        for(int i = 0; i < m_dotPath.size(); i++) {
+            Point point = m_dotPath.get(i);
+            m_positions[i] = point.y * NUM_CELLS + point.x;
+        }
+        return m_positions;
+    }
+
+    /**Every game gets its own seed, the board is dealt from it on the next createDots()*/
+    private void newRecord() {
+        long seed = System.nanoTime();
+        m_random = new Random(seed);
+        m_record = new GameRecord(NUM_CELLS, seed);
+    }
+
     private int squareN(int n) {
         int square = n / m_cellHeight; //m_cellHeight == m_cellWidth
         if(square < 0) square = 0;
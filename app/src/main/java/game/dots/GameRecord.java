@@ -0,0 +1,91 @@
+package game.dots;
+
+import java.util.Arrays;
+
+/**
+ * A game stored as its seed and the paths the player committed.
+ *
+ * Each move is a header byte with the path length (and LOOP when the path was
+ * closed into a circle), the position of the first dot and then two bits for
+ * every step, so an ordinary move fits in three or four bytes. A loop also
+ * stores the dot that closed it. Undo and redo are single bytes. Replay plays
+ * the bytes back to check the score.
+ */
+public class GameRecord {
+    static final int LOOP = 0x80;
+    static final int UNDO = 0x00;
+    static final int REDO = 0x7F;
+
+    static final int UP = 0;
+    static final int RIGHT = 1;
+    static final int DOWN = 2;
+    static final int LEFT = 3;
+
+    public final int size;
+    public final long seed;
+    private byte[] m_bytes;
+    private int m_length;
+
+    public GameRecord(int size, long seed) {
+        this.size = size;
+        this.seed = seed;
+        m_bytes = new byte[64];
+        m_length = 0;
+    }
+
+    /**
+     * Adds a path of length cells given as y * size + x. closing is the cell the
+     * player moved to when closing a loop, or -1 for an ordinary move.
+     */
+    public void addMove(int[] path, int length, int closing) {
+        ensure(3 + (length + 2) / 4);
+        put(closing >= 0 ? LOOP | length : length);
+
+        int last = path[0];
+        put(last);
+
+        int packed = 0;
+        for(int i = 1; i < length; i++) {
+            int position = path[i];
+            int step;
+            if(position == last - size) step = UP;
+            else if(position == last + 1) step = RIGHT;
+            else if(position == last + size) step = DOWN;
+            else step = LEFT;
+            packed |= step << (2 * ((i - 1) % 4));
+            if((i - 1) % 4 == 3 || i == length - 1) {
+                put(packed);
+                packed = 0;
+            }
+            last = position;
+        }
+
+        if(closing >= 0) {
+            put(closing);
+        }
+    }
+
+    public void addUndo() {
+        ensure(1);
+        put(UNDO);
+    }
+
+    public void addRedo() {
+        ensure(1);
+        put(REDO);
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(m_bytes, m_length);
+    }
+
+    private void put(int b) {
+        m_bytes[m_length++] = (byte) b;
+    }
+
+    private void ensure(int n) {
+        if(m_length + n > m_bytes.length) {
+            m_bytes = Arrays.copyOf(m_bytes, Math.max(m_bytes.length * 2, m_length + n));
+        }
+    }
+}
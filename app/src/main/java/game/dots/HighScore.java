@@ -1,9 +1,12 @@
 package game.dots;
 
 public class HighScore {
+    public long _id;
     public String _name;
     public int _score;
     public String _grid;
+    public long _seed;
+    public byte[] _moves;
 
     public HighScore(){}
 
@@ -13,4 +16,10 @@ public class HighScore {
         this._grid = grid;
     }
 
+    public HighScore(String name, int score, String grid, GameRecord record){
+        this(name, score, grid);
+        this._seed = record.seed;
+        this._moves = record.toByteArray();
+    }
+
 }
@@ -0,0 +1,138 @@
+package game.dots;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary wire format used by LeaderboardSync.
+ *
+ * An upload is a header, the number of scores and then for each score
+ * the name, the grid as one byte, the score, and the seed and moves when the
+ * game was recorded. Numbers that are usually small are written as varints.
+ * A top list is the number of entries followed by a name and a score for each.
+ * Compression is left to the HTTP layer. Every count and length is checked
+ * before anything is allocated, so a reply that is not in this format, like a
+ * captive portal's login page, fails with an IOException.
+ */
+public class LeaderboardCodec {
+    private static final int MAGIC = 0x4453; //"DS"
+    private static final int VERSION = 1;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    static final int TOP_SIZE = 10;
+    private static final int MAX_SCORES = 10 * 1000;
+    private static final int MAX_STRING = 1024;
+    private static final int MAX_MOVES = 64 * 1024;
+
+    public static byte[] encodeScores(List<HighScore> scores) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeShort(MAGIC);
+        out.writeByte(VERSION);
+        writeVarint(out, scores.size());
+        for(HighScore score : scores) {
+            writeString(out, score._name);
+            out.writeByte(Replay.gridSize(score._grid));
+            writeVarint(out, score._score);
+            out.writeBoolean(score._moves != null);
+            if(score._moves != null) {
+                out.writeLong(score._seed);
+                writeVarint(out, score._moves.length);
+                out.write(score._moves);
+            }
+        }
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    public static ArrayList<HighScore> decodeScores(byte[] body) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+        if(in.readUnsignedShort() != MAGIC || in.readUnsignedByte() != VERSION) {
+            throw new IOException("Not a score upload");
+        }
+        int count = readLength(in, MAX_SCORES);
+        ArrayList<HighScore> scores = new ArrayList<>(count);
+        for(int i = 0; i < count; i++) {
+            HighScore score = new HighScore();
+            score._name = readString(in);
+            int size = in.readUnsignedByte();
+            score._grid = size + "x" + size;
+            score._score = readVarint(in);
+            if(in.readBoolean()) {
+                score._seed = in.readLong();
+                score._moves = new byte[readLength(in, MAX_MOVES)];
+                in.readFully(score._moves);
+            }
+            scores.add(score);
+        }
+        return scores;
+    }
+
+    public static byte[] encodeTop(List<HighScore> scores) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        writeVarint(out, scores.size());
+        for(HighScore score : scores) {
+            writeString(out, score._name);
+            writeVarint(out, score._score);
+        }
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    public static ArrayList<HighScore> decodeTop(InputStream body, String grid) throws IOException {
+        DataInputStream in = new DataInputStream(body);
+        int count = readLength(in, TOP_SIZE);
+        ArrayList<HighScore> scores = new ArrayList<>(count);
+        for(int i = 0; i < count; i++) {
+            scores.add(new HighScore(readString(in), readVarint(in), grid));
+        }
+        return scores;
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(UTF8);
+        writeVarint(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[readLength(in, MAX_STRING)];
+        in.readFully(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    private static void writeVarint(DataOutputStream out, int value) throws IOException {
+        while((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readLength(DataInputStream in, int max) throws IOException {
+        int length = readVarint(in);
+        if(length < 0 || length > max) {
+            throw new IOException("Bad length " + length);
+        }
+        return length;
+    }
+
+    private static int readVarint(DataInputStream in) throws IOException {
+        int value = 0;
+        for(int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Bad varint");
+    }
+}
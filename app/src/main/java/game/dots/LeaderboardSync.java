@@ -0,0 +1,236 @@
+package game.dots;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.preference.PreferenceManager;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Optional upload of high scores to a server set in the preferences.
+ *
+ * Submitting a score only puts it in the ScoreOutbox table. The outbox is sent
+ * a while later on a background thread, so scores submitted close together go
+ * out in one request. Failed uploads are retried with a growing delay. Only a
+ * batch the server refuses as bad (400, 422) is dropped, and a batch that is
+ * too large (413) is sent again in halves. The global top ten of a grid is
+ * fetched with If-None-Match and cached in the database, so an unchanged list
+ * costs an empty 304 response.
+ *
+ * The server takes POST {url}/scores with a gzipped LeaderboardCodec upload and
+ * answers GET {url}/top?grid=6x6 with a LeaderboardCodec top list and an ETag.
+ */
+public class LeaderboardSync {
+    static final String PREF_URL = "leaderboardUrl";
+
+    private static final long BATCH_DELAY = 30 * 1000;
+    private static final long MIN_BACKOFF = 30 * 1000;
+    private static final long MAX_BACKOFF = 60 * 60 * 1000;
+    private static final int BATCH_SIZE = 500;
+    private static final int TIMEOUT = 15 * 1000;
+    private static final int HTTP_TOO_LARGE = HttpURLConnection.HTTP_ENTITY_TOO_LARGE;
+    private static final int HTTP_UNPROCESSABLE = 422;
+
+    private static LeaderboardSync s_instance;
+
+    private final Context m_context;
+    private final DatabaseHandler m_db;
+    private final String m_url;
+    private final Handler m_handler;
+    private final Random m_random;
+    private volatile long m_backoff;
+
+    private final Runnable m_flush = new Runnable() {
+        @Override
+        public void run() {
+            if(!flush()) {
+                retryLater();
+            }
+        }
+    };
+
+    public static synchronized LeaderboardSync get(Context context) {
+        if(s_instance == null) {
+            Context application = context.getApplicationContext();
+            s_instance = new LeaderboardSync(application, new DatabaseHandler(application), null);
+        }
+        return s_instance;
+    }
+
+    /**A url of null means the one in the preferences is used*/
+    LeaderboardSync(Context context, DatabaseHandler db, String url) {
+        m_context = context;
+        m_db = db;
+        m_url = url;
+        HandlerThread thread = new HandlerThread("LeaderboardSync");
+        thread.start();
+        m_handler = new Handler(thread.getLooper());
+        m_random = new Random();
+    }
+
+    public static boolean isEnabled(Context context) {
+        return !PreferenceManager.getDefaultSharedPreferences(context).getString(PREF_URL, "").isEmpty();
+    }
+
+    /**A score was put in the outbox, it goes out with the next batch*/
+    public void scoreQueued() {
+        if(m_backoff == 0) {
+            m_handler.removeCallbacks(m_flush);
+            m_handler.postDelayed(m_flush, BATCH_DELAY);
+        }
+    }
+
+    /**Sends whatever is waiting and updates the cached top list of grid*/
+    public void refresh(final String grid) {
+        m_handler.post(new Runnable() {
+            @Override
+            public void run() {
+                if(m_backoff == 0) {
+                    m_handler.removeCallbacks(m_flush);
+                    m_flush.run();
+                }
+                fetchTop(grid);
+            }
+        });
+    }
+
+    private String url() {
+        if(m_url != null) {
+            return m_url;
+        }
+        return PreferenceManager.getDefaultSharedPreferences(m_context).getString(PREF_URL, "");
+    }
+
+    private void retryLater() {
+        m_backoff = Math.min(MAX_BACKOFF, m_backoff == 0 ? MIN_BACKOFF : m_backoff * 2);
+        //Spread the retries out so clients that failed together do not retry together
+        long delay = m_backoff / 2 + (long) (m_random.nextDouble() * m_backoff);
+        m_handler.removeCallbacks(m_flush);
+        m_handler.postDelayed(m_flush, delay);
+    }
+
+    /**
+     * Uploads the outbox in batches, returns false if something is still waiting.
+     * This runs on the sync thread, where an uncaught exception would take the
+     * whole app down, so a database error counts as a failure to retry too.
+     */
+    boolean flush() {
+        try {
+            return flushBatches();
+        } catch(RuntimeException e) {
+            return false;
+        }
+    }
+
+    private boolean flushBatches() {
+        String url = url();
+        if(url.isEmpty()) {
+            return true;
+        }
+        int limit = BATCH_SIZE;
+        while(true) {
+            ArrayList<HighScore> batch = m_db.getOutbox(limit);
+            if(batch.isEmpty()) {
+                m_backoff = 0;
+                return true;
+            }
+            int code;
+            try {
+                code = upload(url, batch);
+            } catch(IOException e) {
+                return false;
+            }
+            if(code == HTTP_TOO_LARGE && batch.size() > 1) {
+                //Send the same scores again in smaller pieces
+                limit = batch.size() / 2;
+                continue;
+            }
+            //Anything but a success or a batch the server can never take is
+            //retried later, so a wrong url or a server problem loses nothing
+            if(!(code >= 200 && code < 300) && !isRejected(code)) {
+                return false;
+            }
+            m_db.removeFromOutbox(batch.get(batch.size() - 1)._id);
+        }
+    }
+
+    /**Posts one batch and returns the response code*/
+    private int upload(String url, ArrayList<HighScore> batch) throws IOException {
+        byte[] body = gzip(LeaderboardCodec.encodeScores(batch));
+        HttpURLConnection connection = (HttpURLConnection) new URL(url + "/scores").openConnection();
+        try {
+            connection.setConnectTimeout(TIMEOUT);
+            connection.setReadTimeout(TIMEOUT);
+            connection.setDoOutput(true);
+            connection.setFixedLengthStreamingMode(body.length);
+            connection.setRequestProperty("Content-Type", "application/octet-stream");
+            connection.setRequestProperty("Content-Encoding", "gzip");
+            OutputStream out = connection.getOutputStream();
+            out.write(body);
+            out.close();
+            return connection.getResponseCode();
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GZIPOutputStream out = new GZIPOutputStream(bytes);
+        out.write(data);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * The server understood the request and refuses these scores, so sending
+     * them again would fail the same way: 400 or 422, or 413 for a single score.
+     * They are dropped from the outbox and stay in the local high scores.
+     */
+    private static boolean isRejected(int code) {
+        return code == HttpURLConnection.HTTP_BAD_REQUEST || code == HTTP_UNPROCESSABLE || code == HTTP_TOO_LARGE;
+    }
+
+    /**Fetches the global top list of grid unless the cached one is current, returns true if it changed*/
+    boolean fetchTop(String grid) {
+        String url = url();
+        if(url.isEmpty()) {
+            return false;
+        }
+        try {
+            HttpURLConnection connection = (HttpURLConnection)
+                    new URL(url + "/top?grid=" + URLEncoder.encode(grid, "UTF-8")).openConnection();
+            try {
+                connection.setConnectTimeout(TIMEOUT);
+                connection.setReadTimeout(TIMEOUT);
+                String etag = m_db.getGlobalEtag(grid);
+                if(etag != null) {
+                    connection.setRequestProperty("If-None-Match", etag);
+                }
+                if(connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                    return false;
+                }
+                InputStream in = connection.getInputStream();
+                ArrayList<HighScore> top = LeaderboardCodec.decodeTop(in, grid);
+                in.close();
+                m_db.setGlobalScores(grid, top, connection.getHeaderField("ETag"));
+                return true;
+            } finally {
+                connection.disconnect();
+            }
+        } catch(IOException | RuntimeException e) {
+            //A database error is retried like a network one
+            return false;
+        }
+    }
+}
@@ -3,6 +3,7 @@ package game.dots;
 import android.app.Activity;
 import android.content.Intent;
 import android.content.SharedPreferences;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.preference.PreferenceManager;
 import android.view.View;
@@ -32,14 +33,28 @@ public class MainMenuActivity extends Activity {
     protected void onResume() {
         super.onResume();
 
-        String grid = sp.getString("gridSize", "6");
-        grid = grid + "x" + grid;
+        //Reading the preferences and opening the database are kept off the
+        //main thread, the list is filled in once the scores are loaded
+        new AsyncTask<Void, Void, ArrayList<HighScore>>() {
+            @Override
+            protected ArrayList<HighScore> doInBackground(Void... params) {
+                String grid = sp.getString("gridSize", "6");
+                grid = grid + "x" + grid;
+                if(LeaderboardSync.isEnabled(MainMenuActivity.this)) {
+                    LeaderboardSync.get(MainMenuActivity.this).refresh(grid);
+                }
+                return db.getAllScores(grid);
+            }
 
-        scores = db.getAllScores(grid);
-
-        adapter = new HighScoreAdapter(this, scores);
-
-        listView.setAdapter(adapter);
+            @Override
+            protected void onPostExecute(ArrayList<HighScore> result) {
+                scores = result;
+                adapter = new HighScoreAdapter(MainMenuActivity.this, scores);
+                listView.setAdapter(adapter);
+                //ActivityManager logs "Fully drawn" with the time from launch until the list is filled
+                reportFullyDrawn();
+            }
+        }.execute();
 
         /*for (HighScore s : scores) {
             String row = s._name + ": " + s._score;
@@ -57,4 +72,9 @@ public class MainMenuActivity extends Activity {
         startActivity(intent);
     }
 
+    public void game_stats(View view) {
+        Intent intent = new Intent(this, StatsActivity.class);
+        startActivity(intent);
+    }
+
 }
@@ -0,0 +1,196 @@
+package game.dots;
+
+import java.util.Arrays;
+
+/**
+ * Undo/redo history for the moves of one game.
+ *
+ * A move is kept as a delta, not a copy of the board: the removed cells with
+ * their colors and the colors that fell in at the top of each affected column.
+ * Everything lives in arrays allocated up front and used as a ring buffer, so
+ * the oldest moves are dropped once CAPACITY is reached.
+ */
+public class MoveJournal {
+
+    /**Read and write access to the colors on the board, as indexes into Dot.COLORS*/
+    public interface Cells {
+        int getColor(int position);
+        void setColor(int position, int color);
+    }
+
+    static final int CAPACITY = 32;
+
+    private final int m_size;
+    private final int m_slotBytes;
+
+    //Per slot: k positions (column by column, top to bottom),
+    //k removed colors and k refill colors
+    private final byte[] m_data;
+    private final int[] m_count;
+    private final int[] m_points;
+    private final int[] m_scratch;
+
+    private int m_head;
+    private int m_undo;
+    private int m_redo;
+    private int m_pending;
+    private int m_token;
+
+    public MoveJournal(int size) {
+        m_size = size;
+        m_slotBytes = 3 * size * size;
+        m_data = new byte[CAPACITY * m_slotBytes];
+        m_count = new int[CAPACITY];
+        m_points = new int[CAPACITY];
+        m_scratch = new int[size * size];
+        m_pending = -1;
+    }
+
+    /**
+     * Starts recording a move that removes the first length cells of path, given
+     * as y * size + x. The colors that fall in are only known once the move has
+     * played out, so the caller passes the returned token to commit() afterwards.
+     */
+    public int begin(int[] path, int length, int points, Cells cells) {
+        int k = length;
+        for(int i = 0; i < k; i++) {
+            m_scratch[i] = (path[i] % m_size) * m_size + path[i] / m_size;
+        }
+        Arrays.sort(m_scratch, 0, k);
+
+        int base = m_head * m_slotBytes;
+        for(int i = 0; i < k; i++) {
+            int x = m_scratch[i] / m_size;
+            int y = m_scratch[i] % m_size;
+            int position = y * m_size + x;
+            m_data[base + i] = (byte) position;
+            m_data[base + k + i] = (byte) cells.getColor(position);
+        }
+        m_count[m_head] = k;
+        m_points[m_head] = points;
+        m_pending = k;
+        return ++m_token;
+    }
+
+    /**Finishes the move started with begin(), reading the refill colors from the board*/
+    public void commit(int token, Cells cells) {
+        if(token != m_token || m_pending < 0) {
+            return;
+        }
+        int base = m_head * m_slotBytes;
+        int k = m_pending;
+        int i = 0;
+        while(i < k) {
+            int x = (m_data[base + i] & 0xFF) % m_size;
+            int j = i;
+            while(j < k && (m_data[base + j] & 0xFF) % m_size == x) {
+                m_data[base + 2 * k + j] = (byte) cells.getColor((j - i) * m_size + x);
+                j++;
+            }
+            i = j;
+        }
+        m_pending = -1;
+        m_head = (m_head + 1) % CAPACITY;
+        m_undo = Math.min(m_undo + 1, CAPACITY);
+        m_redo = 0;
+    }
+
+    public boolean isPending() {
+        return m_pending >= 0;
+    }
+
+    public boolean canUndo() {
+        return m_undo > 0 && !isPending();
+    }
+
+    public boolean canRedo() {
+        return m_redo > 0 && !isPending();
+    }
+
+    /**Puts the last move back on the board and returns the points it gave, or -1*/
+    public int undo(Cells cells) {
+        if(!canUndo()) {
+            return -1;
+        }
+        m_head = (m_head + CAPACITY - 1) % CAPACITY;
+        m_undo--;
+        m_redo++;
+
+        int base = m_head * m_slotBytes;
+        int k = m_count[m_head];
+        int i = 0;
+        while(i < k) {
+            int x = (m_data[base + i] & 0xFF) % m_size;
+            int j = i;
+            while(j < k && (m_data[base + j] & 0xFF) % m_size == x) {
+                j++;
+            }
+            //Walking down the column, survivors are read from below the refills
+            int maxY = (m_data[base + j - 1] & 0xFF) / m_size;
+            int removed = i;
+            int source = j - i;
+            for(int y = 0; y <= maxY; y++) {
+                int position = y * m_size + x;
+                if(removed < j && (m_data[base + removed] & 0xFF) == position) {
+                    cells.setColor(position, m_data[base + k + removed]);
+                    removed++;
+                }
+                else {
+                    cells.setColor(position, cells.getColor(source * m_size + x));
+                    source++;
+                }
+            }
+            i = j;
+        }
+        return m_points[m_head];
+    }
+
+    /**Plays the last undone move again and returns the points it gives, or -1*/
+    public int redo(Cells cells) {
+        if(!canRedo()) {
+            return -1;
+        }
+        int base = m_head * m_slotBytes;
+        int k = m_count[m_head];
+        int i = 0;
+        while(i < k) {
+            int x = (m_data[base + i] & 0xFF) % m_size;
+            int j = i;
+            while(j < k && (m_data[base + j] & 0xFF) % m_size == x) {
+                j++;
+            }
+            //Walking up the column, survivors drop into the lowest free cell
+            int maxY = (m_data[base + j - 1] & 0xFF) / m_size;
+            int removed = j - 1;
+            int target = maxY;
+            for(int y = maxY; y >= 0; y--) {
+                int position = y * m_size + x;
+                if(removed >= i && (m_data[base + removed] & 0xFF) == position) {
+                    removed--;
+                }
+                else {
+                    cells.setColor(target * m_size + x, cells.getColor(position));
+                    target--;
+                }
+            }
+            for(int n = i; n < j; n++) {
+                cells.setColor((n - i) * m_size + x, m_data[base + 2 * k + n]);
+            }
+            i = j;
+        }
+        int points = m_points[m_head];
+        m_head = (m_head + 1) % CAPACITY;
+        m_undo++;
+        m_redo--;
+        return points;
+    }
+
+    /**Forgets every move, used when a new game starts*/
+    public void clear() {
+        m_head = 0;
+        m_undo = 0;
+        m_redo = 0;
+        m_pending = -1;
+        m_token++;
+    }
+}
@@ -1,11 +1,22 @@
 package game.dots;
 
+import android.content.Context;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.preference.Preference;
 import android.preference.PreferenceActivity;
 import android.preference.PreferenceFragment;
+import android.widget.Toast;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
 
 public class MyPreferencesActivity extends PreferenceActivity {
+    static final String SCORE_FILE = "scores.dots";
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -18,6 +29,114 @@ public class MyPreferencesActivity extends PreferenceActivity {
         public void onCreate(final Bundle savedInstanceState) {
             super.onCreate(savedInstanceState);
             addPreferencesFromResource(R.xml.game_preferences);
+
+            findPreference("exportScores").setOnPreferenceClickListener(new Preference.OnPreferenceClickListener() {
+                @Override
+                public boolean onPreferenceClick(Preference preference) {
+                    new ScoreFileTask(getActivity(), true).execute();
+                    return true;
+                }
+            });
+            findPreference("importScores").setOnPreferenceClickListener(new Preference.OnPreferenceClickListener() {
+                @Override
+                public boolean onPreferenceClick(Preference preference) {
+                    new ScoreFileTask(getActivity(), false).execute();
+                    return true;
+                }
+            });
+            findPreference("verifyScores").setOnPreferenceClickListener(new Preference.OnPreferenceClickListener() {
+                @Override
+                public boolean onPreferenceClick(Preference preference) {
+                    new VerifyScoresTask(getActivity()).execute();
+                    return true;
+                }
+            });
+        }
+    }
+
+    /**Exports or imports the score file in the background and tells how it went*/
+    static class ScoreFileTask extends AsyncTask<Void, Void, String> {
+        private final Context m_context;
+        private final boolean m_export;
+
+        ScoreFileTask(Context context, boolean export) {
+            m_context = context.getApplicationContext();
+            m_export = export;
+        }
+
+        @Override
+        protected String doInBackground(Void... params) {
+            String action = m_export ? "Export" : "Import";
+            File dir = m_context.getExternalFilesDir(null);
+            if(dir == null) {
+                return action + " failed: storage is not available";
+            }
+            File file = new File(dir, SCORE_FILE);
+            DatabaseHandler db = new DatabaseHandler(m_context);
+            Closeable stream = null;
+            try {
+                if(m_export) {
+                    FileOutputStream out = new FileOutputStream(file);
+                    stream = out;
+                    int rows = db.exportScores(out);
+                    return "Exported " + rows + " scores to " + file.getPath();
+                }
+                else {
+                    FileInputStream in = new FileInputStream(file);
+                    stream = in;
+                    int rows = db.importScores(in);
+                    return "Imported " + rows + " scores";
+                }
+            } catch(IOException | RuntimeException e) {
+                //A broken file or a database error, e.g. SQLException, must not take the app down
+                return action + " failed: " + e.getMessage();
+            } finally {
+                //Closed here too in case the gzip header could not be read or written
+                if(stream != null) {
+                    try {
+                        stream.close();
+                    } catch(IOException e) {
+                        //Nothing left to do with it
+                    }
+                }
+                db.close();
+            }
+        }
+
+        @Override
+        protected void onPostExecute(String result) {
+            Toast.makeText(m_context, result, Toast.LENGTH_LONG).show();
+        }
+    }
+
+    /**Replays the recorded games in the background and tells how many do not match their score*/
+    static class VerifyScoresTask extends AsyncTask<Void, Void, String> {
+        private final Context m_context;
+
+        VerifyScoresTask(Context context) {
+            m_context = context.getApplicationContext();
+        }
+
+        @Override
+        protected String doInBackground(Void... params) {
+            DatabaseHandler db = new DatabaseHandler(m_context);
+            try {
+                ArrayList<HighScore> invalid = db.getInvalidScores();
+                if(invalid.isEmpty()) {
+                    return "Every recorded score matches its game";
+                }
+                return invalid.size() + " scores do not match their recorded game";
+            } catch(RuntimeException e) {
+                //Same as ScoreFileTask, a database error must not take the app down
+                return "Verify failed: " + e.getMessage();
+            } finally {
+                db.close();
+            }
+        }
+
+        @Override
+        protected void onPostExecute(String result) {
+            Toast.makeText(m_context, result, Toast.LENGTH_LONG).show();
         }
     }
 
@@ -25,4 +144,4 @@ public class MyPreferencesActivity extends PreferenceActivity {
         DatabaseHandler db = new DatabaseHandler(this.getApplicationContext());
         db.clearDB();
     }
-}
\ No newline at end of file
+}
@@ -1,18 +1,18 @@
 package game.dots;
 
 import android.app.Activity;
-import android.media.MediaPlayer;
 import android.os.Bundle;
 import android.view.View;
 
 public class PlayActivity extends Activity {
 
-    private View game;
+    private Game game;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_play);
+        game = (Game) findViewById(R.id.game);
     }
 
     @Override
@@ -20,4 +20,12 @@ public class PlayActivity extends Activity {
         super.onStop();
     }
 
-}
\ No newline at end of file
+    public void game_undo(View view) {
+        game.undo();
+    }
+
+    public void game_redo(View view) {
+        game.redo();
+    }
+
+}
@@ -8,7 +8,7 @@ import android.text.InputType;
 import android.widget.EditText;
 
 public class Popup {
-    public Popup(Context context, final int score, final String grid) {
+    public Popup(final Context context, final int score, final String grid, final GameRecord record) {
         final DatabaseHandler m_db = new DatabaseHandler(context);
         final EditText input = new EditText(context);
         input.setInputType(InputType.TYPE_CLASS_TEXT);
@@ -26,8 +26,13 @@ public class Popup {
                     m_user = m_user.substring(0, 20);
                 }
                 //System.out.println("Your score is ;;; " + Integer.toString(m_finalScore));
-                HighScore hscore = new HighScore(m_user, score, grid);
-                m_db.addScore(hscore);
+                HighScore hscore = new HighScore(m_user, score, grid, record);
+                //With sync on the score only goes to the outbox here, it is uploaded later in a batch
+                boolean sync = LeaderboardSync.isEnabled(context);
+                m_db.addScore(hscore, sync);
+                if(sync) {
+                    LeaderboardSync.get(context).scoreQueued();
+                }
             }
         });
         builder.setNegativeButton("Discard", new DialogInterface.OnClickListener() {
@@ -0,0 +1,171 @@
+package game.dots;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Running estimate of one quantile with the P-square algorithm (Jain and Chlamtac).
+ * The first EXACT values are kept sorted, so the quantile is exact while a grid
+ * has only a few games. After that five markers are moved as scores come in,
+ * so the state is a few numbers no matter how many games are added. It is
+ * stored as a small BLOB next to the other statistics.
+ */
+public class QuantileSketch {
+    static final int EXACT = 32;
+    private static final int MARKERS = 5;
+
+    private final double m_p;
+    private final double[] m_values;
+    private final double[] m_q;
+    private final int[] m_n;
+    private final double[] m_dn;
+    private int m_count;
+
+    public QuantileSketch(double p) {
+        m_p = p;
+        m_values = new double[EXACT];
+        m_q = new double[MARKERS];
+        m_n = new int[MARKERS];
+        m_dn = new double[] {0, p / 2, p, (1 + p) / 2, 1};
+    }
+
+    /**The count, then either the sorted values or the markers and their positions*/
+    public static QuantileSketch fromByteArray(double p, byte[] bytes) {
+        QuantileSketch sketch = new QuantileSketch(p);
+        if(bytes == null || bytes.length < 4) {
+            return sketch;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int count = buffer.getInt();
+        if(count < 0 || bytes.length != size(count)) {
+            return sketch;
+        }
+        sketch.m_count = count;
+        if(count <= EXACT) {
+            for(int i = 0; i < count; i++) {
+                sketch.m_values[i] = buffer.getDouble();
+            }
+            return sketch;
+        }
+        for(int i = 0; i < MARKERS; i++) {
+            sketch.m_q[i] = buffer.getDouble();
+        }
+        for(int i = 0; i < MARKERS; i++) {
+            sketch.m_n[i] = buffer.getInt();
+        }
+        return sketch;
+    }
+
+    public byte[] toByteArray() {
+        ByteBuffer buffer = ByteBuffer.allocate(size(m_count));
+        buffer.putInt(m_count);
+        if(m_count <= EXACT) {
+            for(int i = 0; i < m_count; i++) {
+                buffer.putDouble(m_values[i]);
+            }
+            return buffer.array();
+        }
+        for(int i = 0; i < MARKERS; i++) {
+            buffer.putDouble(m_q[i]);
+        }
+        for(int i = 0; i < MARKERS; i++) {
+            buffer.putInt(m_n[i]);
+        }
+        return buffer.array();
+    }
+
+    private static int size(int count) {
+        return 4 + (count <= EXACT ? count * 8 : MARKERS * 8 + MARKERS * 4);
+    }
+
+    public void add(double x) {
+        //The first values are kept as they are, in order
+        if(m_count < EXACT) {
+            int i = m_count++;
+            while(i > 0 && m_values[i - 1] > x) {
+                m_values[i] = m_values[i - 1];
+                i--;
+            }
+            m_values[i] = x;
+            return;
+        }
+        if(m_count == EXACT) {
+            startMarkers(x);
+            return;
+        }
+
+        int k;
+        if(x < m_q[0]) {
+            m_q[0] = x;
+            k = 0;
+        }
+        else if(x >= m_q[MARKERS - 1]) {
+            m_q[MARKERS - 1] = x;
+            k = MARKERS - 2;
+        }
+        else {
+            k = 0;
+            while(x >= m_q[k + 1]) {
+                k++;
+            }
+        }
+        for(int i = k + 1; i < MARKERS; i++) {
+            m_n[i]++;
+        }
+        m_count++;
+
+        //Move the middle markers towards where they should be
+        for(int i = 1; i < MARKERS - 1; i++) {
+            double desired = 1 + (m_count - 1) * m_dn[i];
+            double d = desired - m_n[i];
+            if((d >= 1 && m_n[i + 1] - m_n[i] > 1) || (d <= -1 && m_n[i - 1] - m_n[i] < -1)) {
+                int step = d > 0 ? 1 : -1;
+                double q = parabolic(i, step);
+                if(m_q[i - 1] < q && q < m_q[i + 1]) {
+                    m_q[i] = q;
+                }
+                else {
+                    m_q[i] = m_q[i] + step * (m_q[i + step] - m_q[i]) / (m_n[i + step] - m_n[i]);
+                }
+                m_n[i] += step;
+            }
+        }
+    }
+
+    /**Places the markers where they belong among the exact values and x*/
+    private void startMarkers(double x) {
+        double[] sorted = Arrays.copyOf(m_values, EXACT + 1);
+        sorted[EXACT] = x;
+        Arrays.sort(sorted);
+        m_count = EXACT + 1;
+        for(int i = 0; i < MARKERS; i++) {
+            int n = (int) Math.round(1 + (m_count - 1) * m_dn[i]);
+            //Markers must stay in order with room for the ones after them
+            n = Math.max(n, i == 0 ? 1 : m_n[i - 1] + 1);
+            n = Math.min(n, m_count - (MARKERS - 1 - i));
+            m_n[i] = n;
+            m_q[i] = sorted[n - 1];
+        }
+    }
+
+    private double parabolic(int i, int d) {
+        return m_q[i] + (double) d / (m_n[i + 1] - m_n[i - 1]) *
+                ((m_n[i] - m_n[i - 1] + d) * (m_q[i + 1] - m_q[i]) / (m_n[i + 1] - m_n[i]) +
+                 (m_n[i + 1] - m_n[i] - d) * (m_q[i] - m_q[i - 1]) / (m_n[i] - m_n[i - 1]));
+    }
+
+    /**The estimated quantile, exact while no more than EXACT values have been added*/
+    public double get() {
+        if(m_count == 0) {
+            return 0;
+        }
+        if(m_count <= EXACT) {
+            return m_values[Math.max(0, (int) Math.ceil(m_p * m_count) - 1)];
+        }
+        return m_q[2];
+    }
+
+    public int count() {
+        return m_count;
+    }
+}
@@ -0,0 +1,218 @@
+package game.dots;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Plays a GameRecord back without a view, following the same rules and the
+ * same order of random draws as Game. The board is a byte per cell and cells
+ * are plain ints (y * size + x), so it runs on a plain JVM as well, and one
+ * instance can check thousands of recorded games a second.
+ */
+public class Replay {
+    /**Moves in a game, as in Game*/
+    static final int MOVES = 30;
+
+    private final int m_size;
+    private final byte[] m_board;
+    private final boolean[] m_used;
+    private final int[] m_path;
+    private int m_pathLength;
+    private final Random m_random;
+    private final MoveJournal m_journal;
+    private final MoveJournal.Cells m_cells;
+
+    public Replay(int size) {
+        m_size = size;
+        m_board = new byte[size * size];
+        m_used = new boolean[size * size];
+        m_path = new int[size * size];
+        m_random = new Random();
+        m_journal = new MoveJournal(size);
+        m_cells = new MoveJournal.Cells() {
+            @Override
+            public int getColor(int position) {
+                return m_board[position];
+            }
+
+            @Override
+            public void setColor(int position, int color) {
+                m_board[position] = (byte) color;
+            }
+        };
+    }
+
+    /**
+     * Number of cells on a side for a grid name like "6x6", or -1 if it is not
+     * one. A recording stores a cell in one byte, so no side is over 16.
+     */
+    public static int gridSize(String grid) {
+        if(grid == null || !grid.matches("\\d{1,2}x\\d{1,2}")) {
+            return -1;
+        }
+        int x = grid.indexOf('x');
+        int size = Integer.parseInt(grid.substring(0, x));
+        if(size < 1 || size > 16 || size != Integer.parseInt(grid.substring(x + 1))) {
+            return -1;
+        }
+        return size;
+    }
+
+    /**Plays the moves from the board dealt by seed, returns the final score or -1 if they are not a legal game*/
+    public int play(long seed, byte[] moves) {
+        m_random.setSeed(seed);
+        m_journal.clear();
+        for(int i = 0; i < m_board.length; i++) {
+            m_board[i] = (byte) m_random.nextInt(Dot.COLORS.length);
+        }
+
+        int score = 0;
+        int movesLeft = MOVES;
+        int i = 0;
+        while(i < moves.length) {
+            if(movesLeft <= 0) {
+                return -1;
+            }
+            int header = moves[i++] & 0xFF;
+            int points;
+            if(header == GameRecord.UNDO) {
+                points = m_journal.undo(m_cells);
+                if(points < 0) {
+                    return -1;
+                }
+                score -= points;
+                movesLeft++;
+                continue;
+            }
+            if(header == GameRecord.REDO) {
+                points = m_journal.redo(m_cells);
+                if(points < 0) {
+                    return -1;
+                }
+            }
+            else {
+                boolean loop = (header & GameRecord.LOOP) != 0;
+                int length = header & ~GameRecord.LOOP;
+                int bytes = 1 + (length + 2) / 4 + (loop ? 1 : 0);
+                if(length < (loop ? 3 : 2) || i + bytes > moves.length) {
+                    return -1;
+                }
+                if(!readPath(moves, i, length)) {
+                    return -1;
+                }
+                i += bytes;
+                if(loop) {
+                    if(!closesLoop(moves[i - 1] & 0xFF)) {
+                        return -1;
+                    }
+                    selectColor(m_board[m_path[0]]);
+                }
+                points = m_pathLength;
+                removePath();
+            }
+            score += points;
+            movesLeft--;
+        }
+
+        //A game that ends with moves left must have run out of connections
+        if(movesLeft > 0 && hasMove()) {
+            return -1;
+        }
+        return score;
+    }
+
+    /**Decodes a path into m_path, checking that it stays on the board and on one color*/
+    private boolean readPath(byte[] moves, int offset, int length) {
+        m_pathLength = 0;
+        Arrays.fill(m_used, false);
+        int position = moves[offset] & 0xFF;
+        if(position >= m_board.length) {
+            return false;
+        }
+        int x = position % m_size;
+        int y = position / m_size;
+        int color = m_board[position];
+        for(int n = 0; n < length; n++) {
+            if(n > 0) {
+                int step = (moves[offset + 1 + (n - 1) / 4] >> (2 * ((n - 1) % 4))) & 3;
+                if(step == GameRecord.UP) y--;
+                else if(step == GameRecord.RIGHT) x++;
+                else if(step == GameRecord.DOWN) y++;
+                else x--;
+                if(x < 0 || y < 0 || x >= m_size || y >= m_size) {
+                    return false;
+                }
+            }
+            position = y * m_size + x;
+            if(m_used[position] || m_board[position] != color) {
+                return false;
+            }
+            m_used[position] = true;
+            m_path[m_pathLength++] = position;
+        }
+        return true;
+    }
+
+    /**
+     * Like Game, a loop is closed by moving from the last dot of the path to an
+     * adjacent dot already on it, other than the one just before the last.
+     */
+    private boolean closesLoop(int closing) {
+        if(closing >= m_board.length || !m_used[closing]) {
+            return false;
+        }
+        int last = m_path[m_pathLength - 1];
+        if(closing == last || closing == m_path[m_pathLength - 2]) {
+            return false;
+        }
+        int dx = Math.abs(closing % m_size - last % m_size);
+        int dy = Math.abs(closing / m_size - last / m_size);
+        return dx + dy == 1;
+    }
+
+    /**A closed loop takes every dot of its color, in board order like Game does*/
+    private void selectColor(int color) {
+        m_pathLength = 0;
+        for(int position = 0; position < m_board.length; position++) {
+            if(m_board[position] == color) {
+                m_path[m_pathLength++] = position;
+            }
+        }
+    }
+
+    /**Same gravity and draw order as Game.moveDots()*/
+    private void removePath() {
+        //Stable sort by row, ties keep their path order like Collections.sort in Game
+        for(int n = 1; n < m_pathLength; n++) {
+            int position = m_path[n];
+            int m = n - 1;
+            while(m >= 0 && m_path[m] / m_size > position / m_size) {
+                m_path[m + 1] = m_path[m];
+                m--;
+            }
+            m_path[m + 1] = position;
+        }
+        int token = m_journal.begin(m_path, m_pathLength, m_pathLength, m_cells);
+        int x = 0;
+        for(int n = 0; n < m_pathLength; n++) {
+            x = m_path[n] % m_size;
+            for(int y = m_path[n] / m_size; y > 0; y--) {
+                m_board[y * m_size + x] = m_board[(y - 1) * m_size + x];
+            }
+            m_board[x] = (byte) m_random.nextInt(Dot.COLORS.length);
+        }
+        m_board[x] = (byte) m_random.nextInt(Dot.COLORS.length);
+        m_journal.commit(token, m_cells);
+    }
+
+    private boolean hasMove() {
+        for(int y = 0; y < m_size; y++) {
+            for(int x = 0; x < m_size; x++) {
+                int color = m_board[y * m_size + x];
+                if(x + 1 < m_size && m_board[y * m_size + x + 1] == color) return true;
+                if(y + 1 < m_size && m_board[(y + 1) * m_size + x] == color) return true;
+            }
+        }
+        return false;
+    }
+}
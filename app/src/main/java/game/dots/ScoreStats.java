@@ -0,0 +1,23 @@
+package game.dots;
+
+public class ScoreStats {
+    static final int BUCKET = 10; //Width of a histogram bucket in points
+
+    public String _grid;
+    public int _games;
+    public long _total;
+    public int _best;
+    public double _median;
+    public double _p90;
+    public int[] _histogram; //_histogram[i] counts scores from i*BUCKET to (i+1)*BUCKET - 1
+
+    public ScoreStats(String grid) {
+        this._grid = grid;
+        this._histogram = new int[0];
+    }
+
+    public double mean() {
+        return _games == 0 ? 0 : (double) _total / _games;
+    }
+
+}
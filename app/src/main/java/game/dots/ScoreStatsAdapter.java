@@ -0,0 +1,56 @@
+package game.dots;
+
+import android.content.Context;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ArrayAdapter;
+import android.widget.TextView;
+
+import java.util.ArrayList;
+
+public class ScoreStatsAdapter extends ArrayAdapter<ScoreStats> {
+    private static final int BAR_WIDTH = 20;
+
+    public ScoreStatsAdapter(Context context, ArrayList<ScoreStats> stats) {
+        super(context, 0, stats);
+    }
+
+    @Override
+    public View getView(int position, View convertView, ViewGroup parent) {
+        ScoreStats stats = getItem(position);
+
+        if(convertView == null) {
+            convertView = LayoutInflater.from(getContext()).inflate(R.layout.listview_stats, parent, false);
+        }
+
+        TextView summary = (TextView) convertView.findViewById(R.id.statsSummary);
+        TextView histogram = (TextView) convertView.findViewById(R.id.statsHistogram);
+
+        summary.setText(stats._grid + "\n" +
+                "Games: " + stats._games + "\n" +
+                "Mean: " + Math.round(stats.mean()) + "   Median: " + Math.round(stats._median) + "\n" +
+                "90%: " + Math.round(stats._p90) + "   Best: " + stats._best);
+
+        int max = 0;
+        for(int count : stats._histogram) {
+            max = Math.max(max, count);
+        }
+        StringBuilder bars = new StringBuilder();
+        for(int i = 0; i < stats._histogram.length; i++) {
+            int count = stats._histogram[i];
+            if(count == 0) {
+                continue;
+            }
+            bars.append(String.format("%4d-%-4d ", i * ScoreStats.BUCKET, (i + 1) * ScoreStats.BUCKET - 1));
+            int width = Math.max(1, count * BAR_WIDTH / max);
+            for(int w = 0; w < width; w++) {
+                bars.append('#');
+            }
+            bars.append(' ').append(count).append('\n');
+        }
+        histogram.setText(bars.toString());
+
+        return convertView;
+    }
+}
@@ -0,0 +1,45 @@
+package game.dots;
+
+import android.app.Activity;
+import android.os.AsyncTask;
+import android.os.Bundle;
+import android.widget.ListView;
+
+import java.util.ArrayList;
+
+public class StatsActivity extends Activity {
+    DatabaseHandler db;
+    ListView listView;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_stats);
+
+        db = new DatabaseHandler(this);
+        listView = (ListView) findViewById(R.id.statsList);
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+
+        final String[] gridValues = getResources().getStringArray(R.array.gridValues);
+        new AsyncTask<Void, Void, ArrayList<ScoreStats>>() {
+            @Override
+            protected ArrayList<ScoreStats> doInBackground(Void... params) {
+                ArrayList<ScoreStats> stats = new ArrayList<>();
+                for(String size : gridValues) {
+                    stats.add(db.getStats(size + "x" + size));
+                }
+                return stats;
+            }
+
+            @Override
+            protected void onPostExecute(ArrayList<ScoreStats> result) {
+                listView.setAdapter(new ScoreStatsAdapter(StatsActivity.this, result));
+            }
+        }.execute();
+    }
+
+}
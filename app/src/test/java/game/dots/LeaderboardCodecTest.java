@@ -0,0 +1,98 @@
+package game.dots;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Round trips through LeaderboardCodec, and replies it must refuse before
+ * allocating anything.
+ */
+public class LeaderboardCodecTest {
+
+    private static void assertTopFails(byte[] body) {
+        try {
+            LeaderboardCodec.decodeTop(new ByteArrayInputStream(body), "6x6");
+            fail("Decoded a reply that is not a top list");
+        } catch(IOException e) {
+            //Expected
+        }
+    }
+
+    @Test
+    public void scoresSurviveRoundTrip() throws IOException {
+        List<HighScore> scores = new ArrayList<>();
+        scores.add(new HighScore("Þórður", 42, "6x6"));
+        HighScore recorded = new HighScore("player", 300, "8x8");
+        recorded._seed = -5;
+        recorded._moves = new byte[] {3, 1, 2, 0x7F};
+        scores.add(recorded);
+
+        List<HighScore> decoded = LeaderboardCodec.decodeScores(LeaderboardCodec.encodeScores(scores));
+        assertEquals(2, decoded.size());
+        assertEquals("Þórður", decoded.get(0)._name);
+        assertEquals(42, decoded.get(0)._score);
+        assertEquals("8x8", decoded.get(1)._grid);
+        assertEquals(-5, decoded.get(1)._seed);
+        assertArrayEquals(recorded._moves, decoded.get(1)._moves);
+    }
+
+    @Test
+    public void topSurvivesRoundTrip() throws IOException {
+        List<HighScore> top = new ArrayList<>();
+        for(int i = 0; i < LeaderboardCodec.TOP_SIZE; i++) {
+            top.add(new HighScore("player" + i, 100 - i, "6x6"));
+        }
+        byte[] body = LeaderboardCodec.encodeTop(top);
+        List<HighScore> decoded = LeaderboardCodec.decodeTop(new ByteArrayInputStream(body), "6x6");
+        assertEquals(LeaderboardCodec.TOP_SIZE, decoded.size());
+        assertEquals("player9", decoded.get(9)._name);
+        assertEquals(91, decoded.get(9)._score);
+    }
+
+    @Test
+    public void htmlPageIsRefused() {
+        assertTopFails("<!DOCTYPE html><html><body>Sign in to the network</body></html>".getBytes());
+    }
+
+    @Test
+    public void tooManyEntriesAreRefused() {
+        assertTopFails(new byte[] {LeaderboardCodec.TOP_SIZE + 1});
+    }
+
+    @Test
+    public void negativeLengthIsRefused() {
+        //One entry whose name length is a five byte varint with the sign bit set
+        assertTopFails(new byte[] {1, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F});
+    }
+
+    @Test
+    public void hugeRecordingIsRefused() throws IOException {
+        HighScore recorded = new HighScore("player", 1, "6x6");
+        recorded._moves = new byte[] {1};
+        List<HighScore> scores = new ArrayList<>();
+        scores.add(recorded);
+        byte[] body = LeaderboardCodec.encodeScores(scores);
+        //The moves length is the second to last byte, make it a varint of 2^28
+        byte[] forged = new byte[body.length + 3];
+        System.arraycopy(body, 0, forged, 0, body.length - 2);
+        forged[body.length - 2] = (byte) 0x80;
+        forged[body.length - 1] = (byte) 0x80;
+        forged[body.length] = (byte) 0x80;
+        forged[body.length + 1] = (byte) 0x80;
+        forged[body.length + 2] = 0x01;
+        try {
+            LeaderboardCodec.decodeScores(forged);
+            fail("Allocated a recording of 256 MB");
+        } catch(IOException e) {
+            //Expected
+        }
+    }
+}
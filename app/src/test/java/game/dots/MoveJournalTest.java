@@ -0,0 +1,134 @@
+package game.dots;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Undoing and redoing moves must give back exactly the boards seen while
+ * playing them.
+ */
+public class MoveJournalTest {
+    private static final int SIZE = 6;
+
+    private final int[] m_board = new int[SIZE * SIZE];
+    private final MoveJournal.Cells m_cells = new MoveJournal.Cells() {
+        @Override
+        public int getColor(int position) {
+            return m_board[position];
+        }
+
+        @Override
+        public void setColor(int position, int color) {
+            m_board[position] = color;
+        }
+    };
+
+    /**Removes up to length random cells, lets the columns fall and refills them from the top*/
+    private int move(Random random, MoveJournal journal, int length) {
+        int[] path = new int[length];
+        boolean[] used = new boolean[SIZE * SIZE];
+        int k = 0;
+        while(k < length) {
+            int position = random.nextInt(SIZE * SIZE);
+            if(!used[position]) {
+                used[position] = true;
+                path[k++] = position;
+            }
+        }
+        int token = journal.begin(path, k, k * 2, m_cells);
+        assertTrue(journal.isPending());
+        assertFalse(journal.canUndo());
+
+        for(int x = 0; x < SIZE; x++) {
+            int target = SIZE - 1;
+            for(int y = SIZE - 1; y >= 0; y--) {
+                if(!used[y * SIZE + x]) {
+                    m_board[target-- * SIZE + x] = m_board[y * SIZE + x];
+                }
+            }
+            while(target >= 0) {
+                m_board[target-- * SIZE + x] = random.nextInt(Dot.COLORS.length);
+            }
+        }
+        journal.commit(token, m_cells);
+        return k * 2;
+    }
+
+    @Test
+    public void undoAndRedoRestoreEveryBoard() {
+        Random random = new Random(7);
+        for(int game = 0; game < 200; game++) {
+            MoveJournal journal = new MoveJournal(SIZE);
+            for(int i = 0; i < m_board.length; i++) {
+                m_board[i] = random.nextInt(Dot.COLORS.length);
+            }
+            ArrayList<int[]> boards = new ArrayList<>();
+            ArrayList<Integer> points = new ArrayList<>();
+            boards.add(m_board.clone());
+            int moves = 1 + random.nextInt(MoveJournal.CAPACITY);
+            for(int n = 0; n < moves; n++) {
+                points.add(move(random, journal, 1 + random.nextInt(SIZE * SIZE)));
+                boards.add(m_board.clone());
+            }
+
+            for(int n = moves - 1; n >= 0; n--) {
+                assertEquals((int) points.get(n), journal.undo(m_cells));
+                assertArrayEquals(boards.get(n), m_board);
+            }
+            assertEquals(-1, journal.undo(m_cells));
+
+            for(int n = 0; n < moves; n++) {
+                assertEquals((int) points.get(n), journal.redo(m_cells));
+                assertArrayEquals(boards.get(n + 1), m_board);
+            }
+            assertEquals(-1, journal.redo(m_cells));
+        }
+    }
+
+    @Test
+    public void newMoveDropsRedo() {
+        Random random = new Random(3);
+        MoveJournal journal = new MoveJournal(SIZE);
+        move(random, journal, 3);
+        move(random, journal, 4);
+        journal.undo(m_cells);
+        assertTrue(journal.canRedo());
+
+        move(random, journal, 2);
+        assertFalse(journal.canRedo());
+        assertEquals(-1, journal.redo(m_cells));
+    }
+
+    @Test
+    public void oldestMovesAreDropped() {
+        Random random = new Random(11);
+        MoveJournal journal = new MoveJournal(SIZE);
+        for(int n = 0; n < MoveJournal.CAPACITY + 5; n++) {
+            move(random, journal, 2);
+        }
+        int undone = 0;
+        while(journal.undo(m_cells) >= 0) {
+            undone++;
+        }
+        assertEquals(MoveJournal.CAPACITY, undone);
+    }
+
+    @Test
+    public void clearForgetsPendingMove() {
+        Random random = new Random(13);
+        MoveJournal journal = new MoveJournal(SIZE);
+        move(random, journal, 3);
+        int token = journal.begin(new int[] {0, 1}, 2, 2, m_cells);
+        journal.clear();
+        journal.commit(token, m_cells);
+        assertFalse(journal.isPending());
+        assertFalse(journal.canUndo());
+    }
+}
@@ -0,0 +1,97 @@
+package game.dots;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * QuantileSketch against the exact quantiles of the same scores.
+ */
+public class QuantileSketchTest {
+    private static final double[] QUANTILES = {0.5, 0.9};
+
+    /**The smallest value with at least p of the values at or below it*/
+    private static double exact(double[] values, int count, double p) {
+        double[] sorted = Arrays.copyOf(values, count);
+        Arrays.sort(sorted);
+        return sorted[Math.max(0, (int) Math.ceil(p * count) - 1)];
+    }
+
+    @Test
+    public void emptySketchIsZero() {
+        assertEquals(0, new QuantileSketch(0.5).get(), 0);
+        assertEquals(0, new QuantileSketch(0.5).count());
+    }
+
+    @Test
+    public void exactForFewValues() {
+        Random random = new Random(1);
+        for(double p : QUANTILES) {
+            QuantileSketch sketch = new QuantileSketch(p);
+            double[] values = new double[QuantileSketch.EXACT];
+            for(int n = 0; n < values.length; n++) {
+                values[n] = random.nextInt(120);
+                sketch.add(values[n]);
+                assertEquals("p" + p + " after " + (n + 1), exact(values, n + 1, p), sketch.get(), 0);
+            }
+        }
+    }
+
+    @Test
+    public void fiveValues() {
+        QuantileSketch median = new QuantileSketch(0.5);
+        QuantileSketch p90 = new QuantileSketch(0.9);
+        for(int score : new int[] {40, 10, 50, 20, 30}) {
+            median.add(score);
+            p90.add(score);
+        }
+        assertEquals(30, median.get(), 0);
+        assertEquals(50, p90.get(), 0);
+    }
+
+    @Test
+    public void closeToExactForManyValues() {
+        Random random = new Random(2);
+        for(double p : QUANTILES) {
+            QuantileSketch sketch = new QuantileSketch(p);
+            double[] values = new double[5000];
+            for(int n = 0; n < values.length; n++) {
+                //Scores cluster around a typical game with a long tail of good ones
+                values[n] = Math.max(0, Math.round(60 + 15 * random.nextGaussian()));
+                sketch.add(values[n]);
+                if(n + 1 == QuantileSketch.EXACT + 1 || (n + 1) % 500 == 0) {
+                    assertEquals("p" + p + " after " + (n + 1), exact(values, n + 1, p), sketch.get(), 3);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void survivesByteArray() {
+        Random random = new Random(3);
+        for(int count : new int[] {0, 1, QuantileSketch.EXACT, QuantileSketch.EXACT + 1, 1000}) {
+            QuantileSketch sketch = new QuantileSketch(0.9);
+            QuantileSketch copy = sketch;
+            for(int n = 0; n < count; n++) {
+                //Going through the bytes between adds must not change anything
+                copy = QuantileSketch.fromByteArray(0.9, copy.toByteArray());
+                double score = random.nextInt(200);
+                sketch.add(score);
+                copy.add(score);
+            }
+            copy = QuantileSketch.fromByteArray(0.9, copy.toByteArray());
+            assertEquals(count, copy.count());
+            assertEquals(sketch.get(), copy.get(), 0);
+        }
+    }
+
+    @Test
+    public void badBytesGiveEmptySketch() {
+        assertEquals(0, QuantileSketch.fromByteArray(0.5, null).count());
+        assertEquals(0, QuantileSketch.fromByteArray(0.5, new byte[3]).count());
+        assertEquals(0, QuantileSketch.fromByteArray(0.5, new byte[] {0, 0, 0, 2, 0}).count());
+    }
+}
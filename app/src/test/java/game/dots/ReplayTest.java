@@ -0,0 +1,246 @@
+package game.dots;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Plays random games the way Game does, records them with GameRecord and
+ * checks that Replay arrives at the same score.
+ */
+public class ReplayTest {
+    private static final int SIZE = 6;
+
+    /**The board of Game with its random draws in the same order*/
+    private static class Board implements MoveJournal.Cells {
+        final int[] colors = new int[SIZE * SIZE];
+        final Random random;
+
+        Board(long seed) {
+            random = new Random(seed);
+            //createDots(), row by row
+            for(int i = 0; i < colors.length; i++) {
+                colors[i] = random.nextInt(Dot.COLORS.length);
+            }
+        }
+
+        public int getColor(int position) {
+            return colors[position];
+        }
+
+        public void setColor(int position, int color) {
+            colors[position] = color;
+        }
+
+        /**Game.moveDots(): each removed dot swaps its way to the top, then one more color is drawn*/
+        void remove(ArrayList<Integer> path) {
+            //Stable sort by row, as Collections.sort does in Game
+            for(int n = 1; n < path.size(); n++) {
+                int position = path.get(n);
+                int m = n - 1;
+                while(m >= 0 && path.get(m) / SIZE > position / SIZE) {
+                    path.set(m + 1, path.get(m));
+                    m--;
+                }
+                path.set(m + 1, position);
+            }
+            int top = 0;
+            for(int position : path) {
+                int x = position % SIZE;
+                for(int y = position / SIZE; y > 0; y--) {
+                    int color = colors[y * SIZE + x];
+                    colors[y * SIZE + x] = colors[(y - 1) * SIZE + x];
+                    colors[(y - 1) * SIZE + x] = color;
+                }
+                //The new dot above the board takes the removed color away
+                colors[x] = random.nextInt(Dot.COLORS.length);
+                top = x;
+            }
+            colors[top] = random.nextInt(Dot.COLORS.length);
+        }
+
+        boolean hasMove() {
+            for(int y = 0; y < SIZE; y++) {
+                for(int x = 0; x < SIZE; x++) {
+                    int color = colors[y * SIZE + x];
+                    if(x + 1 < SIZE && colors[y * SIZE + x + 1] == color) return true;
+                    if(y + 1 < SIZE && colors[(y + 1) * SIZE + x] == color) return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static int[] toArray(ArrayList<Integer> list) {
+        int[] array = new int[list.size()];
+        for(int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+
+    /**Plays one game with random paths, undos and redos and returns its score*/
+    private static int play(Random player, GameRecord record) {
+        Board board = new Board(record.seed);
+        MoveJournal journal = new MoveJournal(SIZE);
+        int score = 0;
+        int moves = 30;
+        while(moves > 0) {
+            int action = player.nextInt(10);
+            if(action == 0) {
+                int points = journal.undo(board);
+                if(points >= 0) {
+                    record.addUndo();
+                    score -= points;
+                    moves++;
+                }
+                continue;
+            }
+            if(action == 1) {
+                int points = journal.redo(board);
+                if(points >= 0) {
+                    record.addRedo();
+                    score += points;
+                    moves--;
+                }
+                continue;
+            }
+            if(!board.hasMove()) {
+                break;
+            }
+
+            //A random walk over dots of the start color
+            int start = player.nextInt(SIZE * SIZE);
+            ArrayList<Integer> path = new ArrayList<>();
+            path.add(start);
+            for(int step = 0; step < 10; step++) {
+                int last = path.get(path.size() - 1);
+                int direction = player.nextInt(4);
+                int x = last % SIZE + (direction == 1 ? 1 : direction == 3 ? -1 : 0);
+                int y = last / SIZE + (direction == 2 ? 1 : direction == 0 ? -1 : 0);
+                if(x >= 0 && y >= 0 && x < SIZE && y < SIZE && !path.contains(y * SIZE + x)
+                        && board.colors[y * SIZE + x] == board.colors[start]) {
+                    path.add(y * SIZE + x);
+                }
+            }
+            if(path.size() < 2) {
+                continue;
+            }
+
+            //Close a loop when the last dot touches an earlier one
+            int last = path.get(path.size() - 1);
+            int closing = -1;
+            for(int i = 0; i < path.size() - 2; i++) {
+                int position = path.get(i);
+                if(Math.abs(position % SIZE - last % SIZE) + Math.abs(position / SIZE - last / SIZE) == 1) {
+                    closing = position;
+                }
+            }
+            record.addMove(toArray(path), path.size(), closing);
+            if(closing >= 0) {
+                int color = board.colors[start];
+                path.clear();
+                for(int position = 0; position < board.colors.length; position++) {
+                    if(board.colors[position] == color) {
+                        path.add(position);
+                    }
+                }
+            }
+
+            int token = journal.begin(toArray(path), path.size(), path.size(), board);
+            board.remove(path);
+            journal.commit(token, board);
+            score += path.size();
+            moves--;
+        }
+        return score;
+    }
+
+    @Test
+    public void gridSizeOnlyReadsSquareGrids() {
+        assertEquals(6, Replay.gridSize("6x6"));
+        assertEquals(16, Replay.gridSize("16x16"));
+        assertEquals(-1, Replay.gridSize("6"));
+        assertEquals(-1, Replay.gridSize("x"));
+        assertEquals(-1, Replay.gridSize("6x7"));
+        assertEquals(-1, Replay.gridSize("0x0"));
+        assertEquals(-1, Replay.gridSize("17x17"));
+        assertEquals(-1, Replay.gridSize("-6x-6"));
+        assertEquals(-1, Replay.gridSize(null));
+    }
+
+    @Test
+    public void replayMatchesRecordedGames() {
+        Random player = new Random(5);
+        Replay replay = new Replay(SIZE);
+        for(int game = 0; game < 500; game++) {
+            GameRecord record = new GameRecord(SIZE, player.nextLong());
+            int score = play(player, record);
+            assertEquals("game " + game, score, replay.play(record.seed, record.toByteArray()));
+        }
+    }
+
+    /**The first run of length dots of one color in a row, or null*/
+    private static int[] findRow(Board board, int length) {
+        for(int position = 0; position < board.colors.length; position++) {
+            int x = position % SIZE;
+            int n = 1;
+            while(n < length && x + n < SIZE && board.colors[position + n] == board.colors[position]) {
+                n++;
+            }
+            if(n == length) {
+                int[] row = new int[length];
+                for(int i = 0; i < length; i++) {
+                    row[i] = position + i;
+                }
+                return row;
+            }
+        }
+        return null;
+    }
+
+    @Test
+    public void forgedLoopIsRejected() {
+        //Play 29 short moves, then end on three dots in a row that cannot close a loop
+        for(long seed = 0; ; seed++) {
+            Board board = new Board(seed);
+            ArrayList<int[]> pairs = new ArrayList<>();
+            int[] pair = findRow(board, 2);
+            while(pairs.size() < 29 && pair != null) {
+                pairs.add(pair);
+                ArrayList<Integer> path = new ArrayList<>();
+                path.add(pair[0]);
+                path.add(pair[1]);
+                board.remove(path);
+                pair = findRow(board, 2);
+            }
+            int[] row = findRow(board, 3);
+            if(pairs.size() < 29 || row == null) {
+                continue;
+            }
+
+            GameRecord honest = new GameRecord(SIZE, seed);
+            GameRecord notAdjacent = new GameRecord(SIZE, seed);
+            GameRecord secondLast = new GameRecord(SIZE, seed);
+            for(int[] move : pairs) {
+                honest.addMove(move, 2, -1);
+                notAdjacent.addMove(move, 2, -1);
+                secondLast.addMove(move, 2, -1);
+            }
+            honest.addMove(row, 3, -1);
+            //The first dot is on the path but not next to the last one
+            notAdjacent.addMove(row, 3, row[0]);
+            //Going back to the second last dot does not close anything
+            secondLast.addMove(row, 3, row[1]);
+
+            Replay replay = new Replay(SIZE);
+            assertEquals(29 * 2 + 3, replay.play(seed, honest.toByteArray()));
+            assertEquals(-1, replay.play(seed, notAdjacent.toByteArray()));
+            assertEquals(-1, replay.play(seed, secondLast.toByteArray()));
+            return;
+        }
+    }
+}
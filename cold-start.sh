@@ -0,0 +1,20 @@
+#!/bin/sh
+# Cold start of the main menu: the process is killed before every launch.
+# TotalTime from "am start -W" is the time until the first frame, the
+# "Fully drawn" line is logged once the high scores are in the list.
+# Usage: ./cold-start.sh [runs]
+
+RUNS=${1:-10}
+COMPONENT=game.dots/.MainMenuActivity
+
+i=0
+while [ $i -lt "$RUNS" ]; do
+    adb shell am force-stop game.dots
+    sleep 1
+    adb logcat -c
+    total=$(adb shell am start -W -n $COMPONENT | tr -d '\r' | sed -n 's/^TotalTime: //p')
+    sleep 2
+    drawn=$(adb logcat -d -s ActivityManager:I ActivityTaskManager:I | tr -d '\r' | sed -n "s/.*Fully drawn $COMPONENT: //p")
+    echo "run $((i + 1)): first frame ${total}ms, fully drawn ${drawn:-?}"
+    i=$((i + 1))
+done